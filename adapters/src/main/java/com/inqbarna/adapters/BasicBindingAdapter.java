@@ -19,34 +19,37 @@ package com.inqbarna.adapters;
 import android.os.Handler;
 import android.os.Looper;
 import android.os.Message;
+import android.view.Choreographer;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ObjectArrays;
-import com.inqbarna.adapters.internal.DeferredOperation;
-import com.inqbarna.adapters.internal.DeferredOperation.Type;
+import com.inqbarna.adapters.internal.ChunkedList;
+import com.inqbarna.adapters.internal.ComparisonCallback;
+import com.inqbarna.adapters.internal.EditScript;
+import com.inqbarna.adapters.internal.ResultApplier;
+import com.inqbarna.adapters.internal.TrimmedDiff;
 import com.inqbarna.common.AdapterSyncList;
 
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Iterator;
 import java.util.List;
 import java.util.concurrent.Executor;
-import java.util.concurrent.Executors;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicReference;
 
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.BatchingListUpdateCallback;
 import androidx.recyclerview.widget.DiffUtil;
 import androidx.recyclerview.widget.ListUpdateCallback;
+import androidx.recyclerview.widget.RecyclerView.AdapterDataObserver;
 import io.reactivex.Single;
 import io.reactivex.SingleObserver;
 import io.reactivex.disposables.Disposable;
-import io.reactivex.disposables.Disposables;
-import io.reactivex.internal.disposables.DisposableHelper;
 import timber.log.Timber;
 
 /**
@@ -73,27 +76,99 @@ public class BasicBindingAdapter<T extends TypeMarker> extends BindingAdapter {
     }
 
     private static final UpdatesHandler MAIN_THREAD_HANDLER = new UpdatesHandler(Looper.getMainLooper());
-    private static final Executor OFF_THREAD_EXECUTOR = Executors.newSingleThreadExecutor();
 
-    private List<T>                 mData;
+    private final ChunkedList<T>    mData = new ChunkedList<>();
+    private final ResultApplier.ItemCallback<T> mItemCallback = new ResultApplier.ItemCallback<T>() {
+        @Override
+        public void onRemovingElement(T item) {
+            BasicBindingAdapter.this.onRemovingElement(item);
+        }
+
+        @Override
+        public void releaseItemResources(T item) {
+            release(item);
+        }
+    };
     private DiffCallback<? super T> diffCallback;
-    private final AtomicReference<Disposable> updateTask;
+    private DiffEngine.Selector mDiffEngineSelector = DiffEngines.adaptive();
     private final Executor offThreadExecutor;
 
+    /**
+     * Incremented with every change notification, so an update can tell whether it was computed against the data
+     * currently held by the adapter
+     */
+    private int mGeneration;
+    private final Object updateLock = new Object();
+    private Updater<T> inFlightUpdate;
+    private Updater<T> pendingUpdate;
+
+    /**
+     * Content fingerprints of mData, only valid while {@link #mFingerprintsGeneration} matches {@link #mGeneration} and
+     * {@link #mFingerprintsCallback}, which computed them, is still the diff callback
+     */
+    private long[]                  mFingerprints;
+    private int                     mFingerprintsGeneration;
+    private DiffCallback<? super T> mFingerprintsCallback;
+
+    /**
+     * Max time spent applying an update result on each frame, 0 to apply it at once
+     */
+    private long mApplyFrameBudgetNanos;
+
+    private UpdateMetricsListener mMetricsListener;
+
+    private static final int RELEASE_BATCH_SIZE = 256;
+    private Executor mReleaseExecutor;
+    /**
+     * Items waiting to be released on {@link #mReleaseExecutor}, only accessed from main thread
+     */
+    private List<T> mPendingReleases;
+
+    private final AdapterDataObserver generationObserver = new AdapterDataObserver() {
+        @Override
+        public void onChanged() {
+            mGeneration++;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount) {
+            mGeneration++;
+        }
+
+        @Override
+        public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
+            mGeneration++;
+        }
+
+        @Override
+        public void onItemRangeInserted(int positionStart, int itemCount) {
+            mGeneration++;
+        }
+
+        @Override
+        public void onItemRangeRemoved(int positionStart, int itemCount) {
+            mGeneration++;
+        }
+
+        @Override
+        public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
+            mGeneration++;
+        }
+    };
+
     protected BasicBindingAdapter() {
         this(null);
     }
 
     public BasicBindingAdapter(ItemBinder binder) {
-        this(binder, OFF_THREAD_EXECUTOR);
+        this(binder, DiffScheduler.getDefault());
     }
 
     public BasicBindingAdapter(ItemBinder binder, Executor offThreadExecutor) {
         setItemBinder(binder);
-        mData = new ArrayList<>();
         diffCallback = identityDiff();
-        updateTask = new AtomicReference<>();
         this.offThreadExecutor = offThreadExecutor;
+        registerAdapterDataObserver(generationObserver);
     }
 
     public void setItems(List<? extends T> items) {
@@ -116,210 +191,583 @@ public class BasicBindingAdapter<T extends TypeMarker> extends BindingAdapter {
 
     public void setDiffCallback(DiffCallback<? super T> diffCallback) {
         this.diffCallback = diffCallback;
+        setFingerprints(null, null);
     }
 
-    public Single<List<? extends T>> updateItems(@NonNull List<? extends T> items) {
-        return new Updater<>(this, items, offThreadExecutor);
+    /**
+     * Computes every update with the given engine, instead of letting {@link DiffEngines#adaptive()} pick one
+     */
+    public void setDiffEngine(@NonNull DiffEngine engine) {
+        setDiffEngineSelector(DiffEngines.fixed(engine));
     }
 
-    private void onUpdateFinished(@NonNull DiffUtil.DiffResult diffResult, @NonNull List<? extends T> targetList, UpdateLogger logger) {
+    /**
+     * Sets how the {@link DiffEngine} of each update is chosen, {@link DiffEngines#adaptive()} by default. Selectors
+     * are called off the main thread
+     */
+    public void setDiffEngineSelector(@NonNull DiffEngine.Selector selector) {
+        mDiffEngineSelector = Preconditions.checkNotNull(selector, "Selector may not be null");
+    }
+
+    /**
+     * Spreads the application of large update results over several frames, spending at most given time on each one.
+     * Adapter data is modified along with every notification, so {@link #getItemCount()} and {@link #getDataAt(int)}
+     * are always consistent with what has been notified so far. Next update won't start until the current one is
+     * completely applied.
+     *
+     * @param budget time per frame, or 0 (the default) to apply each result at once
+     */
+    public void setApplyFrameBudget(long budget, @NonNull TimeUnit unit) {
+        Preconditions.checkArgument(budget >= 0, "Budget may not be negative: %s", budget);
+        mApplyFrameBudgetNanos = unit.toNanos(budget);
+    }
 
-        // Initialize lists...
-        final int originalSize = mData.size();
-        List<DeferredOperation<T>> operations = new ArrayList<>(originalSize);
-        for (int i = 0; i < originalSize; i++) {
-            operations.add(new DeferredOperation<>(Type.Keep, mData.get(i)));
+    /**
+     * Sets a listener that receives timings and change counts of every update requested through
+     * {@link #updateItems(List)}, once it's applied, cancelled or superseded. Called on the main thread
+     */
+    public void setUpdateMetricsListener(@Nullable UpdateMetricsListener listener) {
+        mMetricsListener = listener;
+    }
+
+    private void reportMetrics(@NonNull Updater<T> updater) {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            MAIN_THREAD_HANDLER.obtainMessage(UpdatesHandler.REPORT_METRICS, updater).sendToTarget();
+            return;
+        }
+        if (null != mMetricsListener) {
+            mMetricsListener.onUpdateMetrics(updater.metrics.build());
         }
+    }
 
-        diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+    /**
+     * Keeps the content fingerprints of current data, so they don't need to be computed again on next update
+     */
+    private void setFingerprints(@Nullable long[] fingerprints, @Nullable DiffCallback<? super T> callback) {
+        mFingerprints = fingerprints;
+        mFingerprintsGeneration = mGeneration;
+        mFingerprintsCallback = callback;
+    }
+
+    @Nullable
+    private long[] currentFingerprints() {
+        return mFingerprintsGeneration == mGeneration && mFingerprintsCallback == diffCallback ? mFingerprints : null;
+    }
 
+    /**
+     * Computes the differences between current data and given items off the main thread, and then applies them. At
+     * most one diff per adapter is computed at a time, always against the data currently held by the adapter. If
+     * several updates are requested while one is being computed, only the latest is diffed afterwards, and the
+     * superseded ones complete with the final result.
+     */
+    public Single<List<? extends T>> updateItems(@NonNull List<? extends T> items) {
+        return new UpdateRequest<>(this, items);
+    }
+
+    /**
+     * Applies an explicit batch of operations on current data, without computing any diff. Adjacent operations of the
+     * same kind are notified as a single range. Removed and replaced items go through
+     * {@link #onRemovingElement(TypeMarker)}.
+     * <p>
+     * Data is edited in place, with no copy of the whole list. It is held in small chunks, so each inserted or moved
+     * item shifts the rest of its chunk and the boundaries of later chunks, not every item after it, and a removed
+     * range drops whole chunks at once. The cost of a patch still grows with the list size, by {@code size / 64} per
+     * inserted or moved item and per removed range.
+     * <p>
+     * An update requested through {@link #updateItems(List)} that is being computed at this point will be diffed
+     * again against the patched data.
+     *
+     * @throws IndexOutOfBoundsException if the patch doesn't fit current data. Nothing is applied in that case
+     */
+    public void applyPatch(@NonNull ListPatch<? extends T> patch) {
+        patch.checkBounds(mData.size());
+
+        final BatchingListUpdateCallback notifier = new BatchingListUpdateCallback(new ListUpdateCallback() {
             @Override
             public void onInserted(int position, int count) {
-                logger.debugMessage("%d Items inserted at %d", count, position);
                 notifyItemRangeInserted(addOffsets(position), count);
-                while (count > 0) {
-                    operations.add(position, new DeferredOperation<>(Type.Placeholder));
-                    position++;
-                    count--;
-                }
             }
 
             @Override
             public void onRemoved(int position, int count) {
-                logger.debugMessage("%d Items removed from pos %d", count, position);
                 notifyItemRangeRemoved(addOffsets(position), count);
-                while (count > 0) {
-                    DeferredOperation<T> deferredOperation = operations.remove(position);
-                    if (deferredOperation.getType() == Type.Keep) {
-                        T removedItem = deferredOperation.getData();
-                        onRemovingElement(removedItem);
-                    } else if (deferredOperation.getType() == Type.New) {
-                        T notYetInsertedItem = deferredOperation.getData();
-                        releaseItemResources(notYetInsertedItem);
-                    }
-                    count--;
-                }
             }
 
             @Override
             public void onMoved(int fromPosition, int toPosition) {
-                logger.debugMessage("Item moved %d --> %d", fromPosition, toPosition);
                 notifyItemMoved(addOffsets(fromPosition), addOffsets(toPosition));
-                replaceWith(fromPosition, toPosition, null);
             }
 
-            private void replaceWith(int fromPosition, int toPosition, T item) {
-                if (fromPosition != toPosition) {
-                    // This is a move
-                    final DeferredOperation<T> remove = operations.remove(fromPosition);
-                    operations.add(toPosition, remove);
-                } else {
-                    // This is just a change
-                    DeferredOperation<T> deferredOperation = operations.remove(fromPosition);
-                    if (deferredOperation.getType() == Type.Keep) {
-                        onRemovingElement(deferredOperation.getData());
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                notifyItemRangeChanged(addOffsets(position), count, payload);
+            }
+        });
+
+        for (ListPatch.Operation<? extends T> operation : patch.operations()) {
+            final int position = operation.position;
+            switch (operation.type) {
+                case ListPatch.INSERT:
+                    mData.addAll(position, operation.items);
+                    notifier.onInserted(position, operation.items.size());
+                    break;
+                case ListPatch.REMOVE: {
+                    final List<T> removed = mData.subList(position, position + operation.extra);
+                    for (int i = 0, sz = removed.size(); i < sz; i++) {
+                        onRemovingElement(removed.get(i));
+                    }
+                    removed.clear();
+                    notifier.onRemoved(position, operation.extra);
+                }
+                break;
+                case ListPatch.REPLACE: {
+                    final T item = operation.items.get(0);
+                    final T previous = mData.set(position, item);
+                    if (previous != item) {
+                        onRemovingElement(previous);
                     }
-                    operations.add(toPosition, new DeferredOperation<>(Type.New, item));
+                    notifier.onChanged(position, 1, null);
                 }
+                break;
+                case ListPatch.MOVE:
+                    mData.add(operation.extra, mData.remove(position));
+                    notifier.onMoved(position, operation.extra);
+                    break;
+            }
+        }
+        notifier.dispatchLastEvent();
+        printDbg("[PATCH] Applied %d operations", patch.size());
+    }
+
+    private void onUpdateFinished(@NonNull DiffResult diffResult, @NonNull List<? extends T> targetList, @NonNull Updater<T> updater) {
+        ResultApplier.apply(mData, updater.editScript, diffResult, targetList, mItemCallback);
+
+        diffResult.dispatchUpdatesTo(new ListUpdateCallback() {
+
+            @Override
+            public void onInserted(int position, int count) {
+                updater.debugMessage("%d Items inserted at %d", count, position);
+                updater.metrics.inserted += count;
+                notifyItemRangeInserted(addOffsets(position), count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                updater.debugMessage("%d Items removed from pos %d", count, position);
+                updater.metrics.removed += count;
+                notifyItemRangeRemoved(addOffsets(position), count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                updater.debugMessage("Item moved %d --> %d", fromPosition, toPosition);
+                updater.metrics.moved++;
+                notifyItemMoved(addOffsets(fromPosition), addOffsets(toPosition));
             }
 
             @Override
             public void onChanged(int position, int count, Object payload) {
+                updater.debugMessage("%d items changed at position %d", count, position);
+                updater.metrics.changed += count;
+                notifyItemRangeChanged(addOffsets(position), count, payload);
+            }
+        });
+    }
 
-                if (null != payload) {
-                    logger.debugMessage("%d items changed at position %d", count, position);
-                    notifyItemRangeChanged(addOffsets(position), count, payload);
-                    List<? extends T> data;
-                    if (payload instanceof List) {
-                        data = (List<? extends T>) payload;
-                    } else {
-                        data = Collections.singletonList((T) payload);
-                    }
+    /**
+     * Single returned by {@link #updateItems(List)}. Subscribing enqueues the target list on the adapter update
+     * pipeline.
+     */
+    private static class UpdateRequest<K extends TypeMarker> extends Single<List<? extends K>> {
+        private final BasicBindingAdapter<K> adapter;
+        private final List<? extends K>      targetList;
 
-                    if (data.size() != count) {
-                        throw new IllegalArgumentException("Payload size is " + data.size() + " but count is: " + count);
-                    }
+        UpdateRequest(@NonNull BasicBindingAdapter<K> adapter, @NonNull List<? extends K> targetList) {
+            this.adapter = Preconditions.checkNotNull(adapter, "adapter may not be null");
+            Preconditions.checkNotNull(targetList, "target list needs to be not null");
+            // Snapshots of adapter data are immutable already, no need to copy them
+            this.targetList = ChunkedList.isSnapshot(targetList) ? targetList : ImmutableList.copyOf(targetList);
+        }
 
-                    logger.dbgPrintList(data, "Changed payload", "{PL}");
+        @Override
+        protected void subscribeActual(SingleObserver<? super List<? extends K>> observer) {
+            final Waiter<K> waiter = new Waiter<>(adapter, observer);
+            observer.onSubscribe(waiter);
+            if (!waiter.isDisposed()) {
+                adapter.enqueueUpdate(targetList, waiter);
+            }
+        }
+    }
 
+    /**
+     * A subscriber waiting for an update to be applied. It may end up receiving the result of a later update if its own
+     * target has been superseded before being diffed.
+     */
+    private static class Waiter<K extends TypeMarker> implements Disposable {
+        private final BasicBindingAdapter<K>                   adapter;
+        private final SingleObserver<? super List<? extends K>> observer;
+        private final AtomicBoolean                            disposed = new AtomicBoolean();
+
+        Waiter(BasicBindingAdapter<K> adapter, SingleObserver<? super List<? extends K>> observer) {
+            this.adapter = adapter;
+            this.observer = observer;
+        }
 
-                    final Iterator<? extends T> replacementIter = data.iterator();
-                    while (replacementIter.hasNext()) {
-                        replaceWith(position, position, replacementIter.next());
-                        position++;
-                    }
-                } else {
-                    logger.debugMessage("[ERROR] Reported callback onChange with %d items, but payload is null", count);
-                }
+        @Override
+        public void dispose() {
+            if (disposed.compareAndSet(false, true)) {
+                adapter.onWaiterDisposed();
             }
-        });
+        }
 
+        @Override
+        public boolean isDisposed() {
+            return disposed.get();
+        }
 
-        // Apply results then!
-        mData.clear();
+        void onSuccess(List<? extends K> result) {
+            if (!isDisposed()) {
+                observer.onSuccess(result);
+            }
+        }
 
-        for (int i = 0, sz = operations.size(); i < sz; i++) {
-            final DeferredOperation<T> operation = operations.get(i);
-            final T operationData = operation.getData();
-            switch (operation.getType()) {
-                case Keep:
-                case New:
-                    if (null == operationData) {
-                        throw new IllegalArgumentException("Operation Data has not been assigned yet!! shouldn't happen here");
-                    }
-                    mData.add(operationData);
-                    break;
-                case Placeholder: {
-                    T data = operationData;
-                    if (data == null) {
-                        data = targetList.get(i);
+        void onError(Throwable throwable) {
+            if (!isDisposed()) {
+                observer.onError(throwable);
+            }
+        }
+    }
+
+    void enqueueUpdate(@NonNull List<? extends T> targetList, @NonNull Waiter<T> waiter) {
+        final Updater<T> superseded;
+        synchronized (updateLock) {
+            final Updater<T> updater = new Updater<>(this, targetList, offThreadExecutor);
+            updater.addWaiter(waiter);
+            superseded = pendingUpdate;
+            if (null != superseded) {
+                updater.debugMessage("Superseding %s", superseded);
+                updater.adoptWaiters(superseded);
+                superseded.metrics.superseded = true;
+            }
+            pendingUpdate = updater;
+        }
+        if (null != superseded) {
+            reportMetrics(superseded);
+        }
+        startNextUpdate();
+    }
+
+    private boolean hasPendingUpdate() {
+        synchronized (updateLock) {
+            return null != pendingUpdate;
+        }
+    }
+
+    private void onWaiterDisposed() {
+        final Updater<T> inFlight;
+        synchronized (updateLock) {
+            inFlight = inFlightUpdate;
+        }
+        if (null != inFlight && inFlight.isCancelled()) {
+            inFlight.debugMessage("All subscribers gone, aborting computation");
+            inFlight.requestAbort();
+        }
+    }
+
+    private void startNextUpdate() {
+        if (Looper.myLooper() != Looper.getMainLooper()) {
+            // Snapshot of current data must be taken at main thread
+            MAIN_THREAD_HANDLER.obtainMessage(UpdatesHandler.START_NEXT, this).sendToTarget();
+            return;
+        }
+
+        final Updater<T> next;
+        synchronized (updateLock) {
+            if (null != inFlightUpdate || null == pendingUpdate) {
+                return;
+            }
+            next = pendingUpdate;
+            pendingUpdate = null;
+            if (next.isCancelled()) {
+                next.debugMessage("Job cancelled before starting it!");
+                next.metrics.cancelled = true;
+            } else {
+                inFlightUpdate = next;
+            }
+        }
+        if (next.metrics.cancelled) {
+            reportMetrics(next);
+            return;
+        }
+
+        final long snapshotStart = System.nanoTime();
+        final List<T> snapshot = mData.snapshot();
+        next.metrics.snapshotNanos = System.nanoTime() - snapshotStart;
+        next.metrics.oldSize = snapshot.size();
+        next.start(snapshot, currentFingerprints(), mGeneration, diffCallback,
+                   mDiffEngineSelector, mApplyFrameBudgetNanos > 0);
+    }
+
+    private void onUpdaterFinished(@NonNull Updater<T> updater) {
+        // Decided once under the lock: subscribers may dispose from any thread, and the updater must stay in flight
+        // only if it is really applied by frames
+        boolean applyByFrames = false;
+        synchronized (updateLock) {
+            inFlightUpdate = null;
+            if (!updater.isCancelled() && updater.wasDropped()) {
+                // Dropped by the scheduler before starting, because a newer target was already waiting
+                updater.debugMessage("Dropped before start, subscribers moved to next update");
+                retryLater(updater);
+            } else if (!updater.isCancelled() && updater.hasResult() && updater.baseGeneration != mGeneration) {
+                // Adapter contents changed while diffing, this result is stale. Diff again against committed data,
+                // unless a newer target is already waiting
+                updater.debugMessage("Base generation %d is stale (current %d), diff again", updater.baseGeneration, mGeneration);
+                retryLater(updater);
+            } else if (updater.canApplyByFrames()) {
+                // Still in flight until last frame is applied
+                applyByFrames = true;
+                inFlightUpdate = updater;
+            }
+        }
+
+        if (updater.metrics.superseded) {
+            reportMetrics(updater);
+        } else if (applyByFrames) {
+            new FrameApplier(updater, mApplyFrameBudgetNanos).doFrame(0);
+            return;
+        } else {
+            updater.apply();
+            reportMetrics(updater);
+        }
+        startNextUpdate();
+    }
+
+    /**
+     * Moves subscribers of given updater to the pending update, or makes it pending again if there's none. Must hold
+     * the update lock
+     */
+    private void retryLater(@NonNull Updater<T> updater) {
+        updater.metrics.superseded = true;
+        if (null != pendingUpdate) {
+            pendingUpdate.adoptWaiters(updater);
+        } else {
+            pendingUpdate = updater.restart();
+        }
+    }
+
+    /**
+     * Replays an update result some operations per frame. Data is mutated along with every notification, so adapter
+     * contents always match what has been notified so far
+     */
+    private final class FrameApplier implements Choreographer.FrameCallback, ListUpdateCallback {
+        private final Updater<T>         updater;
+        private final EditScript         script;
+        private final List<? extends T>  targetList;
+        private final ListUpdateCallback editor;
+        private final long               budgetNanos;
+        private int                     nextOperation;
+        private int                     expectedGeneration;
+
+        FrameApplier(@NonNull Updater<T> updater, long budgetNanos) {
+            this.updater = updater;
+            this.script = updater.editScript;
+            this.targetList = updater.targetList;
+            this.editor = ResultApplier.editorOf(mData, targetList, mItemCallback);
+            this.budgetNanos = budgetNanos;
+            this.expectedGeneration = mGeneration;
+        }
+
+        @Override
+        public void doFrame(long frameTimeNanos) {
+            if (expectedGeneration != mGeneration) {
+                // Data modified by other means between frames, remaining operations are meaningless now
+                updater.debugMessage("Data changed while applying by frames, diff again");
+                synchronized (updateLock) {
+                    inFlightUpdate = null;
+                    retryLater(updater);
+                }
+                reportMetrics(updater);
+                startNextUpdate();
+                return;
+            }
+
+            final long frameStart = System.nanoTime();
+            final long deadline = frameStart + budgetNanos;
+            final int count = script.size();
+            try {
+                while (nextOperation < count) {
+                    script.dispatchOperation(nextOperation++, this, updater);
+                    if (System.nanoTime() >= deadline) {
+                        break;
                     }
-                    mData.add(data);
                 }
-                break;
+            } catch (Throwable throwable) {
+                Timber.e(throwable, "Error applying changes");
+                updater.notifyError(throwable);
+                finish();
+                return;
+            } finally {
+                updater.metrics.applyNanos += System.nanoTime() - frameStart;
+            }
+
+            if (nextOperation < count) {
+                updater.debugMessage("Applied %d of %d operations, continue on next frame", nextOperation, count);
+                expectedGeneration = mGeneration;
+                Choreographer.getInstance().postFrameCallback(this);
+            } else {
+                ResultApplier.releaseUnchangedTargets(mData, updater.diffResult, targetList, mItemCallback);
+                updater.onApplied();
+                finish();
             }
         }
 
-        if (mData.size() != targetList.size()) {
-            throw new IllegalStateException(String.format("Something failed updating data, sizes don't match. Data.sz = %d, TargetList.sz = %d", mData.size(), targetList.size()));
+        private void finish() {
+            synchronized (updateLock) {
+                inFlightUpdate = null;
+            }
+            reportMetrics(updater);
+            startNextUpdate();
         }
 
-        // Check inputs that didn't end into result (because they where representing same data) and release them
-        // Considerations, both lists are same length, and should actually be the same contents if everyithing from input was used
-        // Thus, an element from target, not matching same position at mData means it's been discarded by Updater
-        final Iterator<? extends T> dataIterator = mData.iterator();
-        final Iterator<? extends T> targetIterator = targetList.iterator();
-        while (dataIterator.hasNext()) {
-            final T itemAtData = dataIterator.next();
-            final T itemFromTarget = targetIterator.next();
+        @Override
+        public void onInserted(int position, int count) {
+            updater.debugMessage("%d Items inserted at %d", count, position);
+            updater.metrics.inserted += count;
+            editor.onInserted(position, count);
+            notifyItemRangeInserted(addOffsets(position), count);
+        }
 
-            // Intentional use of equality, we wan't to check if it's same instance
-            if (itemAtData != itemFromTarget) {
-                releaseItemResources(itemFromTarget);
-            }
+        @Override
+        public void onRemoved(int position, int count) {
+            updater.debugMessage("%d Items removed from pos %d", count, position);
+            updater.metrics.removed += count;
+            editor.onRemoved(position, count);
+            notifyItemRangeRemoved(addOffsets(position), count);
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            updater.debugMessage("Item moved %d --> %d", fromPosition, toPosition);
+            updater.metrics.moved++;
+            editor.onMoved(fromPosition, toPosition);
+            notifyItemMoved(addOffsets(fromPosition), addOffsets(toPosition));
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            updater.debugMessage("%d items changed at position %d", count, position);
+            updater.metrics.changed += count;
+            editor.onChanged(position, count, payload);
+            notifyItemRangeChanged(addOffsets(position), count, payload);
         }
     }
 
-    private static class Updater<K extends TypeMarker> extends Single<List<? extends K>> implements Runnable, UpdateLogger {
+    private static class Updater<K extends TypeMarker> implements DiffScheduler.Task, ComparisonCallback.Items<K>, UpdateLogger {
 
         private final List<? extends K>      targetList;
         private final BasicBindingAdapter<K> adapter;
-        private final List<K> srcList;
-        private final DiffCallback<? super K> diffCallback;
-        private DiffUtil.DiffResult diffResult;
-        private Disposable mDisposable;
         private final Executor executor;
+        private final List<Waiter<K>> waiters = new CopyOnWriteArrayList<>();
+        private List<K> srcList;
+        private DiffCallback<? super K> diffCallback;
+        private DiffEngine.Selector diffEngineSelector;
+        private int baseGeneration;
+        private DiffResult diffResult;
+        private long[] srcFingerprints;
+        private long[] targetFingerprints;
+        private int[][] changedVariables;
+        private Throwable error;
+        private boolean applyByFrames;
+        private EditScript editScript;
+        private volatile boolean dropped;
+        private volatile boolean abortRequested;
+        private int abortCheckCounter;
 
         private static final AtomicInteger DBG_COUNTER = new AtomicInteger(0);
+        private static final int ABORT_CHECK_MASK = 0x3FF;
 
         private final String debugName;
 
-        private final DiffUtil.Callback _Callback = new DiffUtil.Callback() {
-            @Override
-            public int getOldListSize() {
-                return srcList.size();
-            }
+        final UpdateMetrics.Builder metrics = new UpdateMetrics.Builder();
+        private long requestedAt;
 
-            @Override
-            public int getNewListSize() {
-                return targetList.size();
-            }
 
-            @Override
-            public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
-                final K first = Preconditions
-                        .checkNotNull(srcList.get(oldItemPosition), "First element is null, comparing positions " + oldItemPosition + " to " + newItemPosition + " on " + this);
-                final K second = Preconditions
-                        .checkNotNull(targetList.get(newItemPosition), "Second element is null, comparing positions " + oldItemPosition + " to " + newItemPosition + " on " + this);
-                return diffCallback.areSameEntity(first, second);
-            }
+        Updater(@NonNull BasicBindingAdapter<K> adapter, @NonNull List<? extends K> targetList, Executor executor) {
+            debugName = "Updater-" + DBG_COUNTER.getAndIncrement();
+            requestedAt = System.nanoTime();
+            metrics.newSize = targetList.size();
+            this.targetList = targetList;
+            this.adapter = adapter;
+            this.executor = executor;
 
-            @Override
-            public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
-                final K first = Preconditions
-                        .checkNotNull(srcList.get(oldItemPosition), "First element is null, comparing contents " + oldItemPosition + " to " + newItemPosition + " on " + this);
-                final K second = Preconditions
-                        .checkNotNull(targetList.get(newItemPosition), "Second element is null, comparing contents " + oldItemPosition + " to " + newItemPosition + " on " + this);
-                return diffCallback.areContentEquals(first, second);
+            debugMessage("Created (%s)", this);
+        }
+
+        void addWaiter(Waiter<K> waiter) {
+            waiters.add(waiter);
+        }
+
+        void adoptWaiters(Updater<K> superseded) {
+            waiters.addAll(superseded.waiters);
+            superseded.waiters.clear();
+        }
+
+        /**
+         * @return a new updater with same target and subscribers, ready to be started again
+         */
+        Updater<K> restart() {
+            final Updater<K> updater = new Updater<>(adapter, targetList, executor);
+            updater.requestedAt = requestedAt;
+            updater.adoptWaiters(this);
+            return updater;
+        }
+
+        boolean isCancelled() {
+            for (Waiter<K> waiter : waiters) {
+                if (!waiter.isDisposed()) {
+                    return false;
+                }
             }
+            return true;
+        }
 
-            @Nullable
-            @Override
-            public Object getChangePayload(int oldItemPosition, int newItemPosition) {
-                return targetList.get(newItemPosition);
+        boolean hasResult() {
+            return null != diffResult;
+        }
+
+        void requestAbort() {
+            abortRequested = true;
+        }
+
+        /**
+         * Called from the diff loops, aborts computation if requested. Flag is only read every few calls, so this is
+         * cheap enough for the hot path while still reacting within milliseconds
+         */
+        private void checkAborted() {
+            if ((++abortCheckCounter & ABORT_CHECK_MASK) == 0 && abortRequested) {
+                throw DiffAbortedException.INSTANCE;
             }
-        };
-        private SingleObserver<? super List<? extends K>> mObserver;
+        }
 
-        public Updater(@NonNull BasicBindingAdapter<K> adapter, @NonNull List<? extends K> targetList, Executor executor) {
-            debugName = "Updater-" + DBG_COUNTER.getAndIncrement();
-            this.targetList = ImmutableList.copyOf(Preconditions.checkNotNull(targetList, "target list needs to be not null"));
-            this.adapter = Preconditions.checkNotNull(adapter, "adapter may not be null");
-            srcList = ImmutableList.copyOf(adapter.mData);
-            diffCallback = adapter.diffCallback;
-            this.executor = executor;
+        boolean wasDropped() {
+            return dropped;
+        }
 
-            debugMessage("Created (%s)", this);
+        @Override
+        public boolean isHighPriority() {
+            return adapter.isAttachedToRecyclerView();
+        }
+
+        @Override
+        public boolean isSuperseded() {
+            return isCancelled() || adapter.hasPendingUpdate();
+        }
+
+        @Override
+        public void onDropped() {
+            debugMessage("Dropped by scheduler before start");
+            dropped = true;
+            BasicBindingAdapter.MAIN_THREAD_HANDLER.obtainMessage(UpdatesHandler.RESULTS_FINISHED, this).sendToTarget();
         }
 
         @Override
@@ -338,76 +786,232 @@ public class BasicBindingAdapter<T extends TypeMarker> extends BindingAdapter {
             Timber.d("[%s] " + format, newArgs);
         }
 
-        @Override
-        protected void subscribeActual(SingleObserver<? super List<? extends K>> observer) {
-            mDisposable = Disposables.empty();
-            DisposableHelper.set(adapter.updateTask, mDisposable);
-            this.mObserver = observer;
-            this.mObserver.onSubscribe(mDisposable);
-            startProcess();
-        }
-
         @Override
         public String toString() {
             final MoreObjects.ToStringHelper stringHelper = MoreObjects.toStringHelper(this);
-            stringHelper.add("SrcSize", srcList.size())
+            stringHelper.add("SrcSize", null == srcList ? null : srcList.size())
                         .add("DstSize", targetList.size());
 
             return stringHelper.toString();
         }
 
-        private void startProcess() {
-            if (!mDisposable.isDisposed()) {
-                debugMessage("scheduling process");
-                executor.execute(this);
-            } else {
-                debugMessage("Job cancelled before starting it!");
-            }
+        /**
+         * @param srcFingerprints content fingerprints of given source list, if known
+         * @param applyByFrames   whether result will be applied by frames instead of at once
+         */
+        void start(@NonNull List<K> srcList, @Nullable long[] srcFingerprints, int baseGeneration, DiffCallback<? super K> diffCallback,
+                   DiffEngine.Selector diffEngineSelector, boolean applyByFrames) {
+            this.srcList = srcList;
+            this.applyByFrames = applyByFrames;
+            this.srcFingerprints = srcFingerprints;
+            this.baseGeneration = baseGeneration;
+            this.diffCallback = diffCallback;
+            this.diffEngineSelector = diffEngineSelector;
+            debugMessage("scheduling process (%s)", this);
+            executor.execute(this);
         }
 
         @Override
         public void run() {
-            if (mDisposable.isDisposed()) {
+            if (isCancelled()) {
                 debugMessage("Aborting before start computation");
-                return;
-            }
-            debugMessage("Computing...");
-            diffResult = DiffUtil.calculateDiff(_Callback);
-            if (mDisposable.isDisposed()) {
-                debugMessage("Aborting right after computation, results discarded");
-                return;
+            } else {
+                debugMessage("Computing...");
+                final long computeStart = System.nanoTime();
+                metrics.queueWaitNanos = computeStart - requestedAt;
+                try {
+                    final DiffResult result = calculateDiff();
+                    // Result is applied in place by replaying its script, built here so main thread only edits data
+                    editScript = EditScript.fromResult(result, srcList.size(), targetList.size());
+                    diffResult = result;
+                    debugMessage("Finished with result: %s", diffResult);
+                } catch (DiffAbortedException aborted) {
+                    debugMessage("Computation aborted, all subscribers gone");
+                } catch (Throwable throwable) {
+                    error = throwable;
+                }
+                metrics.diffNanos = System.nanoTime() - computeStart;
             }
-            debugMessage("Finished with result: %s", diffResult);
+            // Always report back, so the adapter can proceed with next update
             BasicBindingAdapter.MAIN_THREAD_HANDLER.obtainMessage(UpdatesHandler.RESULTS_FINISHED, this).sendToTarget();
         }
 
-        public void apply() {
+        private DiffResult calculateDiff() {
+            if (diffCallback instanceof ContentFingerprint) {
+                final ContentFingerprint<? super K> fingerprint = (ContentFingerprint<? super K>) diffCallback;
+                if (null == srcFingerprints) {
+                    debugMessage("Computing fingerprints of source list");
+                    srcFingerprints = computeFingerprints(srcList, fingerprint);
+                }
+                targetFingerprints = computeFingerprints(targetList, fingerprint);
+            }
+
+            if (diffCallback instanceof ChangedVariables) {
+                changedVariables = new int[targetList.size()][];
+            }
+
+            // Items usually change around a small window, linear pass over both ends leaves just that to diff
+            final int oldSize = srcList.size();
+            final int newSize = targetList.size();
+            final int prefix = TrimmedDiff.commonPrefix(srcList, targetList, this);
+            final int suffix = TrimmedDiff.commonSuffix(srcList, targetList, prefix, this);
+            if (!TrimmedDiff.needsWindowDiff(oldSize, newSize, prefix, suffix)) {
+                debugMessage("Nothing to diff, prefix: %d, suffix: %d", prefix, suffix);
+                return TrimmedDiff.withoutWindow(oldSize, newSize, prefix, suffix);
+            }
+            if (prefix == 0 && suffix == 0) {
+                return calculateWindowDiff(0, oldSize, newSize);
+            }
+            debugMessage("Diffing window [%d, %d) to [%d, %d)", prefix, oldSize - suffix, prefix, newSize - suffix);
+            return TrimmedDiff.withWindow(oldSize, newSize, prefix, suffix, calculateWindowDiff(prefix, oldSize - prefix - suffix, newSize - prefix - suffix));
+        }
+
+        private DiffResult calculateWindowDiff(int offset, int oldCount, int newCount) {
+            final WindowInput input = new WindowInput(offset, oldCount, newCount);
+            final DiffEngine engine = diffEngineSelector.select(input);
+            debugMessage("Diffing with engine: %s", engine.getName());
+            metrics.diffEngine = engine.getName();
+            return engine.calculate(input);
+        }
+
+        @Override
+        public boolean areSameEntity(@NonNull K oldItem, @NonNull K newItem) {
+            checkAborted();
+            return diffCallback.areSameEntity(oldItem, newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            checkAborted();
+            final boolean same = null != targetFingerprints
+                                 ? srcFingerprints[oldPosition] == targetFingerprints[newPosition]
+                                 : diffCallback.areContentEquals(srcList.get(oldPosition), targetList.get(newPosition));
+            if (!same && null != changedVariables) {
+                final ChangedVariables<? super K> variables = (ChangedVariables<? super K>) diffCallback;
+                changedVariables[newPosition] = variables.changedVariables(srcList.get(oldPosition), targetList.get(newPosition));
+            }
+            return same;
+        }
+
+        /**
+         * Payload for a range of changed items, at their position on target list
+         */
+        @Override
+        public Object getChangePayload(int newPosition, int count) {
+            if (null != changedVariables) {
+                final VariablesPayload payload = VariablesPayload.union(changedVariables, newPosition, count);
+                if (null != payload) {
+                    return payload;
+                }
+            }
+            return count == 1 ? targetList.get(newPosition) : targetList.subList(newPosition, newPosition + count);
+        }
+
+        /**
+         * Engine input for the window {@code [offset, offset + count)} of both lists
+         */
+        private final class WindowInput implements DiffEngine.Input<K> {
+            private final int               offset;
+            private final List<? extends K> oldItems;
+            private final List<? extends K> newItems;
+
+            WindowInput(int offset, int oldCount, int newCount) {
+                this.offset = offset;
+                oldItems = offset == 0 && oldCount == srcList.size() ? srcList : srcList.subList(offset, offset + oldCount);
+                newItems = offset == 0 && newCount == targetList.size() ? targetList : targetList.subList(offset, offset + newCount);
+            }
+
+            @NonNull
+            @Override
+            public List<? extends K> getOldItems() {
+                return oldItems;
+            }
+
+            @NonNull
+            @Override
+            public List<? extends K> getNewItems() {
+                return newItems;
+            }
+
+            @Override
+            public boolean areSameEntity(@NonNull K oldItem, @NonNull K newItem) {
+                return Updater.this.areSameEntity(oldItem, newItem);
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return Updater.this.areContentsTheSame(oldPosition + offset, newPosition + offset);
+            }
+
+            @Override
+            public Object getChangePayload(int newPosition, int count) {
+                return Updater.this.getChangePayload(newPosition + offset, count);
+            }
+
+            @Override
+            public boolean hasKeys() {
+                return diffCallback instanceof KeyedDiffCallback;
+            }
+
+            @Override
+            public Object keyOf(@NonNull K item) {
+                checkAborted();
+                return ((KeyedDiffCallback<? super K>) diffCallback).keyOf(item);
+            }
+        }
+
+        private long[] computeFingerprints(List<? extends K> list, ContentFingerprint<? super K> fingerprint) {
+            final int size = list.size();
+            final long[] fingerprints = new long[size];
+            for (int i = 0; i < size; i++) {
+                checkAborted();
+                fingerprints[i] = fingerprint.contentFingerprint(list.get(i));
+            }
+            return fingerprints;
+        }
+
+        void apply() {
+            final long applyStart = System.nanoTime();
             try {
-                if (null != diffResult) {
+                if (isCancelled()) {
+                    debugMessage("Skip, target disposed!!");
+                    metrics.cancelled = true;
+                } else if (null != diffResult) {
                     debugMessage("================== START Applying results ==============");
-                    if (!mDisposable.isDisposed()) {
-                        dbgPrintList(adapter.mData, "Items in original list", "-");
-                        dbgPrintList(targetList, "Items in desired list", "+");
-                        adapter.onUpdateFinished(diffResult, targetList, this);
-                        dbgPrintList(adapter.mData, "Items in resulting list", "==>");
-                        assert targetList.size() == adapter.mData.size();
-                        mObserver.onSuccess(adapter.mData);
-                    } else {
-                        debugMessage("Skip, target disposed!!");
-                    }
-                    debugMessage("================== DONE Applying results ==============");
+                    dbgPrintList(adapter.mData, "Items in original list", "-");
+                    dbgPrintList(targetList, "Items in desired list", "+");
+                    adapter.onUpdateFinished(diffResult, targetList, this);
+                    onApplied();
                 } else {
-                    Timber.e("Some unknown error happened while processing");
-                    if (!mDisposable.isDisposed()) {
-                        mObserver.onError(new IllegalStateException("No diff could be computed"));
-
-                    }
+                    Timber.e(error, "Some unknown error happened while processing");
+                    notifyError(null != error ? error : new IllegalStateException("No diff could be computed"));
                 }
             } catch (Throwable throwable) {
                 Timber.e(throwable, "Error applying changes");
-                if (!mDisposable.isDisposed()) {
-                    mObserver.onError(throwable);
-                }
+                notifyError(throwable);
+            } finally {
+                metrics.applyNanos = System.nanoTime() - applyStart;
+            }
+        }
+
+        boolean canApplyByFrames() {
+            return applyByFrames && null != diffResult && !isCancelled();
+        }
+
+        void onApplied() {
+            adapter.setFingerprints(targetFingerprints, diffCallback);
+            dbgPrintList(adapter.mData, "Items in resulting list", "==>");
+            assert targetList.size() == adapter.mData.size();
+            final List<K> result = adapter.mData.snapshot();
+            for (Waiter<K> waiter : waiters) {
+                waiter.onSuccess(result);
+            }
+            debugMessage("================== DONE Applying results ==============");
+        }
+
+        void notifyError(Throwable throwable) {
+            for (Waiter<K> waiter : waiters) {
+                waiter.onError(throwable);
             }
         }
 
@@ -431,12 +1035,14 @@ public class BasicBindingAdapter<T extends TypeMarker> extends BindingAdapter {
 
     @CallSuper
     protected void onRemovingElement(T item) {
-        releaseItemResources(item);
+        release(item);
     }
 
     /**
      * Override to perform cleanups needed on the provided item. Live connections, Observables, any resource should be
      * cleared here. The item will be not anymore stored at the adapter at least.
+     * <p>
+     * Called on the main thread, unless a release executor is set (see {@link #setReleaseExecutor(Executor)})
      *
      * @param item
      */
@@ -444,6 +1050,62 @@ public class BasicBindingAdapter<T extends TypeMarker> extends BindingAdapter {
         /* no-op */
     }
 
+    /**
+     * When a release executor is set, tells whether given item still needs {@link #releaseItemResources(TypeMarker)}
+     * to be called on the main thread. Default is false
+     */
+    protected boolean releaseOnMainThread(T item) {
+        return false;
+    }
+
+    /**
+     * Sets an executor to call {@link #releaseItemResources(TypeMarker)} off the main thread. Items removed while
+     * handling one main thread message are collected, and released afterwards in batches on given executor. Items for
+     * which {@link #releaseOnMainThread(TypeMarker)} is true are still released right away on the main thread.
+     *
+     * @param executor executor for releases, or null (the default) to release every item on the main thread
+     */
+    public void setReleaseExecutor(@Nullable Executor executor) {
+        flushReleases();
+        mReleaseExecutor = executor;
+    }
+
+    private void release(T item) {
+        if (null == mReleaseExecutor || releaseOnMainThread(item)) {
+            releaseItemResources(item);
+            return;
+        }
+        if (null == mPendingReleases) {
+            mPendingReleases = new ArrayList<>();
+            MAIN_THREAD_HANDLER.obtainMessage(UpdatesHandler.FLUSH_RELEASES, this).sendToTarget();
+        }
+        mPendingReleases.add(item);
+    }
+
+    private void flushReleases() {
+        final List<T> pending = mPendingReleases;
+        mPendingReleases = null;
+        if (null == pending) {
+            return;
+        }
+        printDbg("[RELEASE] Releasing %d items off main thread", pending.size());
+        for (int start = 0, size = pending.size(); start < size; start += RELEASE_BATCH_SIZE) {
+            final List<T> batch = pending.subList(start, Math.min(size, start + RELEASE_BATCH_SIZE));
+            mReleaseExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    for (int i = 0, sz = batch.size(); i < sz; i++) {
+                        try {
+                            releaseItemResources(batch.get(i));
+                        } catch (Throwable throwable) {
+                            Timber.e(throwable, "Error releasing item resources");
+                        }
+                    }
+                }
+            });
+        }
+    }
+
     public void addItems(List<? extends T> items) {
         addItems(INVALID_IDX, items);
     }
@@ -467,6 +1129,15 @@ public class BasicBindingAdapter<T extends TypeMarker> extends BindingAdapter {
         }
     }
 
+    /**
+     * @return immutable copy of current items, taken in constant time and safe to read from any thread. Passing it back
+     * to {@link #updateItems(List)} doesn't copy it again
+     */
+    @NonNull
+    public List<T> snapshotItems() {
+        return mData.snapshot();
+    }
+
     protected List<T> getItemsInner() {
         return mData;
     }
@@ -509,8 +1180,75 @@ public class BasicBindingAdapter<T extends TypeMarker> extends BindingAdapter {
         boolean areContentEquals(T a, T b);
     }
 
+    /**
+     * Optional interface for a {@link DiffCallback}. When implemented, contents of items are compared through a 64 bit
+     * fingerprint instead of {@link DiffCallback#areContentEquals(Object, Object)}. Fingerprints are computed off the
+     * main thread once per item, and kept along with adapter data so items are not fingerprinted again on next update.
+     * <p>
+     * Two items with the same fingerprint are considered to have same contents, so it should be a good hash of the
+     * fields that are displayed.
+     */
+    public interface ContentFingerprint<T> {
+        long contentFingerprint(T item);
+    }
+
+    /**
+     * Receives the {@link UpdateMetrics} of each update
+     *
+     * @see #setUpdateMetricsListener(UpdateMetricsListener)
+     */
+    public interface UpdateMetricsListener {
+        void onUpdateMetrics(@NonNull UpdateMetrics metrics);
+    }
+
+    /**
+     * Optional interface for a {@link DiffCallback}. When implemented, items whose contents changed are notified with a
+     * {@link VariablesPayload}, and bound holders only get those variables bound again instead of the whole item.
+     * Useful for rows updated often, like prices or counters.
+     */
+    public interface ChangedVariables<T> {
+        /**
+         * Called off the main thread for items with different contents
+         *
+         * @return ids of the binding variables whose value differs between both items, or null to bind the item again
+         */
+        @Nullable
+        int[] changedVariables(T oldItem, T newItem);
+    }
+
+    /**
+     * Opt-in {@link DiffCallback} for items that have a stable, unique key. When set, {@link DiffEngines#adaptive()}
+     * picks {@link DiffEngines#KEYED}, which matches items by key with hash maps instead of running {@link DiffUtil}
+     * and keeps big lists with many reorderings linear to compare. It's also required by {@link DiffEngines#PATIENCE}.
+     * Keys must honor {@link Object#equals(Object)} and {@link Object#hashCode()}.
+     */
+    public abstract static class KeyedDiffCallback<T> implements DiffCallback<T> {
+        public abstract Object keyOf(T item);
+
+        @Override
+        public boolean areSameEntity(T a, T b) {
+            final Object keyA = keyOf(a);
+            return null == keyA ? null == keyOf(b) : keyA.equals(keyOf(b));
+        }
+    }
+
+    /**
+     * Thrown from within diff callbacks to unwind a computation nobody is waiting for anymore
+     */
+    private static final class DiffAbortedException extends RuntimeException {
+        static final DiffAbortedException INSTANCE = new DiffAbortedException();
+
+        @Override
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
     private static class UpdatesHandler extends Handler {
         static final int RESULTS_FINISHED = 1;
+        static final int START_NEXT = 2;
+        static final int REPORT_METRICS = 3;
+        static final int FLUSH_RELEASES = 4;
         public UpdatesHandler(Looper looper) {
             super(looper);
         }
@@ -520,7 +1258,18 @@ public class BasicBindingAdapter<T extends TypeMarker> extends BindingAdapter {
             switch (msg.what) {
                 case RESULTS_FINISHED:
                     Updater updater = (Updater) msg.obj;
-                    updater.apply();
+                    updater.adapter.onUpdaterFinished(updater);
+                    break;
+                case START_NEXT:
+                    BasicBindingAdapter adapter = (BasicBindingAdapter) msg.obj;
+                    adapter.startNextUpdate();
+                    break;
+                case FLUSH_RELEASES:
+                    ((BasicBindingAdapter) msg.obj).flushReleases();
+                    break;
+                case REPORT_METRICS:
+                    Updater reported = (Updater) msg.obj;
+                    reported.adapter.reportMetrics(reported);
                     break;
             }
         }
@@ -22,15 +22,11 @@ import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.recyclerview.widget.GridLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import android.util.SparseIntArray;
+import android.view.View;
 import android.view.ViewGroup;
 
-import com.google.common.base.Preconditions;
-import com.google.common.collect.BoundType;
-import com.google.common.collect.ImmutableRangeMap;
-import com.google.common.collect.Range;
-import com.google.common.collect.RangeMap;
-
-import java.util.Map;
+import java.util.List;
 
 import timber.log.Timber;
 
@@ -45,45 +41,47 @@ public abstract class BindingAdapter extends RecyclerView.Adapter<BindingHolder>
     }
 
     private final BindingAdapterDelegate mAdapterDelegate;
+    private final GroupIndex mGroupIndex = new GroupIndex(this);
     private final RecyclerView.AdapterDataObserver mGroupingResetObserver = new RecyclerView.AdapterDataObserver() {
         @Override
         public void onChanged() {
-            mRangeMap = null;
-            mSpanSizeLookup = null;
-            mSpanCount = null;
+            mGroupIndex.invalidate();
         }
 
         @Override
         public void onItemRangeChanged(int positionStart, int itemCount) {
-            onChanged();
+            mGroupIndex.onChanged(positionStart, itemCount);
         }
 
         @Override
         public void onItemRangeChanged(int positionStart, int itemCount, Object payload) {
-            onChanged();
+            onItemRangeChanged(positionStart, itemCount);
         }
 
         @Override
         public void onItemRangeInserted(int positionStart, int itemCount) {
-            onChanged();
+            mGroupIndex.onInserted(positionStart, itemCount);
         }
 
         @Override
         public void onItemRangeRemoved(int positionStart, int itemCount) {
-            onChanged();
+            mGroupIndex.onRemoved(positionStart, itemCount);
         }
 
         @Override
         public void onItemRangeMoved(int fromPosition, int toPosition, int itemCount) {
-            onChanged();
+            mGroupIndex.onMoved(fromPosition, toPosition, itemCount);
         }
     };
 
-    private RangeMap<Integer, GroupAttributes> mRangeMap = null;
     private RecyclerView mRecyclerView;
+    private volatile boolean mAttachedToRecyclerView;
+    private final GridLayoutManager.SpanSizeLookup mFixedSpanSizeLookup = new FixedSpanCount();
     private GridLayoutManager.SpanSizeLookup mSpanSizeLookup;
-    private Integer mSpanCount;
+    private int mSpanCount;
     private LifecycleOwner lifecycleOwner;
+    private SharedViewPool mSharedViewPool;
+    private final SparseIntArray mOnScreenCounts = new SparseIntArray();
 
     protected BindingAdapter() {
         this(null);
@@ -113,6 +111,19 @@ public abstract class BindingAdapter extends RecyclerView.Adapter<BindingHolder>
         return bindingHolder;
     }
 
+    /**
+     * Creates a holder of given type around a view inflated by {@link ViewPrewarmer}, going through
+     * {@link #onCreateViewHolder(ViewGroup, int)} as any other holder
+     */
+    BindingHolder createPrewarmedHolder(RecyclerView parent, int viewType, View view) {
+        mAdapterDelegate.setPrewarmedView(view);
+        try {
+            return createViewHolder(parent, viewType);
+        } finally {
+            mAdapterDelegate.setPrewarmedView(null);
+        }
+    }
+
     public void setLifecycleOwner(LifecycleOwner owner) {
         lifecycleOwner = owner;
     }
@@ -130,27 +141,58 @@ public abstract class BindingAdapter extends RecyclerView.Adapter<BindingHolder>
         if (DEBUG) {
             Timber.d("Binding holder [%s] at pos: %d [Layout pos: %d]", getHolderId(holder), position, holder.getLayoutPosition());
         }
+        final ViewPrewarmer prewarmer = holder.takePrewarmer();
+        if (null != prewarmer) {
+            prewarmer.onHolderUsed();
+        }
+        if (holder.getLifecycleOwner() != lifecycleOwner) {
+            // Holder may come from a shared pool, created by another adapter with its own owner
+            holder.setLifecycleOwner(lifecycleOwner);
+        }
         TypeMarker dataAt = getDataAt(position);
         mAdapterDelegate.onBindViewHolder(holder, position, dataAt);
+        bindGroupAttributes(holder, position, dataAt);
+        onHolderJustBound(holder);
+    }
+
+    /**
+     * When all payloads are {@link VariablesPayload}, only the variables they name are bound again
+     */
+    @Override
+    public void onBindViewHolder(BindingHolder holder, int position, List<Object> payloads) {
+        if (!VariablesPayload.isPartial(payloads)) {
+            onBindViewHolder(holder, position);
+            return;
+        }
+        if (DEBUG) {
+            Timber.d("Rebinding holder [%s] at pos: %d with %s", getHolderId(holder), position, payloads);
+        }
+        TypeMarker dataAt = getDataAt(position);
+        mAdapterDelegate.onRebindVariables(holder, position, dataAt, payloads);
+        bindGroupAttributes(holder, position, dataAt);
+        onHolderJustBound(holder);
+    }
+
+    private void bindGroupAttributes(BindingHolder holder, int position, TypeMarker dataAt) {
         if (dataAt instanceof GroupIndicator) {
             GroupIndicator indicator = (GroupIndicator) dataAt;
-            final RangeMap<Integer, GroupAttributes> rangeMap = ensureMap();
-            final Map.Entry<Range<Integer>, GroupAttributes> entry = rangeMap.getEntry(position);
+            final int group = mGroupIndex.groupAt(position);
             boolean enabled = indicator.enabled();
             GroupAttributes holderAttrs = holder.attributes();
             if (enabled) {
                 holder.setEnabled(true);
                 holderAttrs.setNonGroupValues(indicator.attributes());
-                if (null != entry) {
-                    if (isTopData(entry.getKey(), position, getSpanCount(), getSpanSizeLookup())) {
-                        GroupAttributes headAttrs = entry.getValue();
+                if (group != GroupIndex.NO_GROUP) {
+                    updateSpanConfiguration();
+                    if (mGroupIndex.isOnFirstRow(group, position, mSpanCount, mSpanSizeLookup)) {
+                        GroupAttributes headAttrs = mGroupIndex.attributes(group);
                         holderAttrs.setGroupMarginTop(headAttrs.groupMarginTop());
                     } else {
                         holderAttrs.setGroupMarginTop(0);
                     }
 
-                    if (isBottomData(entry.getKey(), position, getSpanCount(), getSpanSizeLookup())) {
-                        GroupAttributes headAttrs = entry.getValue();
+                    if (mGroupIndex.isOnLastRow(group, position, mSpanCount, mSpanSizeLookup)) {
+                        GroupAttributes headAttrs = mGroupIndex.attributes(group);
                         holderAttrs.setGroupMarginBottom(headAttrs.groupMarginBottom());
                     } else {
                         holderAttrs.setGroupMarginBottom(0);
@@ -163,126 +205,110 @@ public abstract class BindingAdapter extends RecyclerView.Adapter<BindingHolder>
                 holderAttrs.reset();
             }
         }
-        onHolderJustBound(holder);
     }
 
     protected void onHolderJustBound(BindingHolder holder) {
         /* no-op. Override if needed */
     }
 
+    @Override
+    @CallSuper
+    public void onViewAttachedToWindow(BindingHolder holder) {
+        super.onViewAttachedToWindow(holder);
+        if (null != mSharedViewPool) {
+            final int viewType = holder.getItemViewType();
+            final int onScreen = mOnScreenCounts.get(viewType) + 1;
+            mOnScreenCounts.put(viewType, onScreen);
+            mSharedViewPool.onHolderShown(viewType, onScreen);
+        }
+    }
+
+    @Override
+    @CallSuper
+    public void onViewDetachedFromWindow(BindingHolder holder) {
+        super.onViewDetachedFromWindow(holder);
+        if (null != mSharedViewPool) {
+            final int viewType = holder.getItemViewType();
+            // Children are removed after detaching from RecyclerView, once counts are already reset
+            mOnScreenCounts.put(viewType, Math.max(0, mOnScreenCounts.get(viewType) - 1));
+        }
+    }
+
     @Override
     @CallSuper
     public void onViewRecycled(BindingHolder holder) {
         super.onViewRecycled(holder);
+        if (null != mSharedViewPool && null != holder.getLifecycleOwner()) {
+            // Pooled holder may outlive this screen, it takes the owner of the adapter binding it next
+            holder.setLifecycleOwner(null);
+        }
         if (DEBUG) {
             Timber.d("Holder recycled [%s] at pos pos: %d [Layout pos: %d]", getHolderId(holder), holder.getAdapterPosition(), holder.getLayoutPosition());
         }
     }
 
-    @Nullable
-    private GridLayoutManager.SpanSizeLookup getSpanSizeLookup() {
-        if (null == mSpanSizeLookup) {
-            initValues();
-        }
-        return mSpanSizeLookup;
-    }
-
-    @Nullable
-    private void initValues() {
+    /**
+     * Row boundaries of groups depend on span configuration, so they are dropped whenever it changes
+     */
+    private void updateSpanConfiguration() {
+        final int spanCount;
+        final GridLayoutManager.SpanSizeLookup spanSizeLookup;
         if (null == mRecyclerView || !(mRecyclerView.getLayoutManager() instanceof GridLayoutManager)) {
-            mSpanCount = 1;
-            mSpanSizeLookup = new FixedSpanCount();
+            spanCount = 1;
+            spanSizeLookup = mFixedSpanSizeLookup;
         } else {
             final GridLayoutManager layoutManager = (GridLayoutManager) mRecyclerView.getLayoutManager();
-            mSpanSizeLookup = layoutManager.getSpanSizeLookup();
-            mSpanCount = layoutManager.getSpanCount();
+            spanSizeLookup = layoutManager.getSpanSizeLookup();
+            spanCount = layoutManager.getSpanCount();
+        }
+        if (spanCount != mSpanCount || spanSizeLookup != mSpanSizeLookup) {
+            mSpanCount = spanCount;
+            mSpanSizeLookup = spanSizeLookup;
+            mGroupIndex.clearRowBoundaries();
         }
     }
 
-    private int getSpanCount() {
-        if (null == mSpanCount) {
-            initValues();
+    @Nullable
+    SharedViewPool getSharedViewPool() {
+        return mSharedViewPool;
+    }
+
+    /**
+     * @see SharedViewPool#attach(BindingAdapter)
+     */
+    void setSharedViewPool(SharedViewPool sharedViewPool) {
+        mSharedViewPool = sharedViewPool;
+        mOnScreenCounts.clear();
+        if (null != sharedViewPool && null != mRecyclerView) {
+            sharedViewPool.onAttachedToRecyclerView(mRecyclerView);
         }
-        return mSpanCount;
+    }
+
+    /**
+     * Safe to call from any thread
+     */
+    boolean isAttachedToRecyclerView() {
+        return mAttachedToRecyclerView;
     }
 
     @Override
     public void onAttachedToRecyclerView(RecyclerView recyclerView) {
         super.onAttachedToRecyclerView(recyclerView);
         mRecyclerView = recyclerView;
+        mAttachedToRecyclerView = true;
+        if (null != mSharedViewPool) {
+            mSharedViewPool.onAttachedToRecyclerView(recyclerView);
+        }
     }
 
     @Override
     public void onDetachedFromRecyclerView(RecyclerView recyclerView) {
         super.onDetachedFromRecyclerView(recyclerView);
         mRecyclerView = null;
+        mAttachedToRecyclerView = false;
         mSpanSizeLookup = null;
-        mSpanCount = null;
-    }
-
-    private boolean isBottomData(Range<Integer> range, int position, int numColumns, @Nullable GridLayoutManager.SpanSizeLookup spanSizeLookup) {
-        Preconditions.checkArgument(range.hasUpperBound());
-        Preconditions.checkArgument(range.contains(position));
-        int pos = range.upperEndpoint();
-        if (range.upperBoundType() == BoundType.OPEN) {
-            pos--;
-        }
-
-        while (numColumns > 0) {
-            if (null != spanSizeLookup) {
-                numColumns -= spanSizeLookup.getSpanSize(pos);
-            } else {
-                numColumns--;
-            }
-            pos--;
-        }
-
-        return pos < position;
-    }
-
-    private boolean isTopData(Range<Integer> range, int position, int numColumns, @Nullable GridLayoutManager.SpanSizeLookup spanSizeLookup) {
-        Preconditions.checkArgument(range.hasLowerBound());
-        Preconditions.checkArgument(range.contains(position));
-        int pos = range.lowerEndpoint();
-        if (range.lowerBoundType() == BoundType.OPEN) {
-            pos++;
-        }
-
-        while (numColumns > 0) {
-            if (null != spanSizeLookup) {
-                numColumns -= spanSizeLookup.getSpanSize(pos);
-            } else {
-                numColumns--;
-            }
-            pos++;
-        }
-
-        return pos > position;
-    }
-
-    @NonNull
-    private RangeMap<Integer, GroupAttributes> ensureMap() {
-        if (null == mRangeMap) {
-            mRangeMap = generateMap();
-        }
-        return mRangeMap;
-    }
-
-    private RangeMap<Integer, GroupAttributes> generateMap() {
-        final ImmutableRangeMap.Builder<Integer, GroupAttributes> builder = ImmutableRangeMap.builder();
-        for (int i = 0; i < getItemCount(); i++) {
-            final TypeMarker dataAt = getDataAt(i);
-            if (dataAt instanceof GroupIndicator) {
-                GroupIndicator indicator = (GroupIndicator) dataAt;
-                final GroupAttributes attributes = indicator.attributes();
-                if (indicator.enabled() && attributes.isGroupHead()) {
-                    final int groupSize = attributes.groupSize();
-                    Preconditions.checkArgument(groupSize >= 1, "Group size is required to be greater or equal to 1, but it's %d", groupSize);
-                    builder.put(Range.closedOpen(i, i + groupSize), attributes);
-                }
-            }
-        }
-        return builder.build();
+        mSpanCount = 0;
+        mOnScreenCounts.clear();
     }
 
     public abstract TypeMarker getDataAt(int position);
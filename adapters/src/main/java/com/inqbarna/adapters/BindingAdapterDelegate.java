@@ -21,9 +21,13 @@ import android.view.ContextThemeWrapper;
 import android.view.LayoutInflater;
 import android.view.View;
 
+import java.util.List;
+
 class BindingAdapterDelegate {
     private       ItemBinder                               mItemBinder;
     private       androidx.databinding.DataBindingComponent mOverrideComponent;
+    private       View                                     mPrewarmedView;
+    private final ChangedVariablesBinding                  mChangedVariablesBinding = new ChangedVariablesBinding();
 
     BindingAdapterDelegate() {
     }
@@ -39,7 +43,10 @@ class BindingAdapterDelegate {
         checkBinder();
 
         final androidx.databinding.ViewDataBinding dataBinding;
-        if (null == mOverrideComponent) {
+        if (null != mPrewarmedView) {
+            dataBinding = null == mOverrideComponent ? DataBindingUtil.bind(mPrewarmedView) : DataBindingUtil.bind(mPrewarmedView, mOverrideComponent);
+            mPrewarmedView = null;
+        } else if (null == mOverrideComponent) {
             dataBinding = DataBindingUtil.inflate(LayoutInflater.from(parent.getContext()), viewType, parent, false);
         } else {
             dataBinding = DataBindingUtil.inflate(LayoutInflater.from(parent.getContext()), viewType, parent, false, mOverrideComponent);
@@ -47,20 +54,63 @@ class BindingAdapterDelegate {
         return new com.inqbarna.adapters.BindingHolder(dataBinding);
     }
 
+    /**
+     * Next holder creation will bind given view, already inflated, instead of inflating a new one
+     */
+    void setPrewarmedView(View view) {
+        mPrewarmedView = view;
+    }
+
     void setOverrideComponent(androidx.databinding.DataBindingComponent overrideComponent) {
         mOverrideComponent = overrideComponent;
     }
 
     void onBindViewHolder(com.inqbarna.adapters.BindingHolder holder, int position, TypeMarker data) {
         checkBinder();
-        final com.inqbarna.adapters.SafeVariableBinding variableBinding = holder.lockVars();
+        final com.inqbarna.adapters.SafeVariableBinding variableBinding = holder.lockVars(false);
         mItemBinder.bindVariables(variableBinding, position, data);
         variableBinding.unlockVars();
     }
 
+    void onRebindVariables(com.inqbarna.adapters.BindingHolder holder, int position, TypeMarker data, List<Object> payloads) {
+        checkBinder();
+        // Payloads name variables known to have changed, even if their model instance is the same
+        final com.inqbarna.adapters.SafeVariableBinding variableBinding = holder.lockVars(true);
+        mChangedVariablesBinding.set(variableBinding, payloads);
+        try {
+            mItemBinder.bindVariables(mChangedVariablesBinding, position, data);
+        } finally {
+            mChangedVariablesBinding.set(null, null);
+        }
+        variableBinding.unlockVars();
+    }
+
     private void checkBinder() {
         if (null == mItemBinder) {
             throw new java.lang.IllegalStateException("ItemBinder not assigned yet!");
         }
     }
-}
\ No newline at end of file
+
+    /**
+     * Forwards only the variables named by some of the {@link VariablesPayload}. Reused for every rebind
+     */
+    private static class ChangedVariablesBinding implements VariableBinding {
+        private VariableBinding mDelegate;
+        private List<Object>    mPayloads;
+
+        void set(VariableBinding delegate, List<Object> payloads) {
+            mDelegate = delegate;
+            mPayloads = payloads;
+        }
+
+        @Override
+        public void bindValue(int variable, Object value) {
+            for (int i = 0, sz = mPayloads.size(); i < sz; i++) {
+                if (((VariablesPayload) mPayloads.get(i)).contains(variable)) {
+                    mDelegate.bindValue(variable, value);
+                    return;
+                }
+            }
+        }
+    }
+}
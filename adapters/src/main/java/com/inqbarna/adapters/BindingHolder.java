@@ -18,13 +18,21 @@ package com.inqbarna.adapters;
 
 import androidx.lifecycle.LifecycleOwner;
 import androidx.databinding.ViewDataBinding;
+import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.core.util.Pair;
 import androidx.recyclerview.widget.RecyclerView;
 
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
 import java.util.Collection;
 
 /**
+ * Holder of a {@link ViewDataBinding}. Last value bound to each variable is remembered, and binding the same instance
+ * again is skipped, as well as executing pending bindings when nothing changed. Models changing in place without
+ * notifying their bindings should implement {@link ContentVersioned} to be bound again.
+ *
  * @author Ricard Aparicio <ricard.aparicio@inqbarna.com>
  * @version 1.0 17/08/16
  */
@@ -33,10 +41,23 @@ public class BindingHolder extends RecyclerView.ViewHolder implements GroupIndic
 
     private BasicIndicatorDelegate mIndicatorHolderDelegate;
 
+    private ViewPrewarmer mPrewarmer;
+
+    private LifecycleOwner mLifecycleOwner;
+
+    private final LockedVarsSet mLockedVars;
+
+    private int[]    mBoundVariables = new int[4];
+    private Object[] mBoundValues    = new Object[4];
+    private long[]   mBoundVersions  = new long[4];
+    private int      mBoundCount;
+    private boolean  mBindingsChanged;
+
     BindingHolder(ViewDataBinding binding) {
         super(binding.getRoot());
         mDataBinding = binding;
         mIndicatorHolderDelegate = new BasicIndicatorDelegate();
+        mLockedVars = new LockedVarsSet(this);
     }
 
     @Override
@@ -54,22 +75,83 @@ public class BindingHolder extends RecyclerView.ViewHolder implements GroupIndic
         mIndicatorHolderDelegate.setEnabled(enabled);
     }
 
+    /**
+     * @deprecated boxes variable ids, use {@link #bindValues(int[], Object[])}
+     */
+    @Deprecated
     public void bindValues(Collection<Pair<Integer, Object>> values) {
         if (null != values) {
             for (Pair<Integer, Object> val : values) {
                 bindValue(val.first, val.second, false);
             }
-            mDataBinding.executePendingBindings();
+            executePendingBindings();
+        }
+    }
+
+    /**
+     * Binds {@code values[i]} to variable {@code variables[i]}, then executes pending bindings
+     */
+    public void bindValues(@NonNull int[] variables, @NonNull Object[] values) {
+        Preconditions.checkArgument(variables.length == values.length, "Got %s variables but %s values", variables.length, values.length);
+        for (int i = 0; i < variables.length; i++) {
+            bindValue(variables[i], values[i], false);
         }
+        executePendingBindings();
     }
 
     public void setLifecycleOwner(LifecycleOwner owner) {
+        mLifecycleOwner = owner;
         mDataBinding.setLifecycleOwner(owner);
     }
 
-    private void bindValue(int varId, Object val, boolean execPending) {
+    LifecycleOwner getLifecycleOwner() {
+        return mLifecycleOwner;
+    }
+
+    /**
+     * @param force bind even if the value was already bound
+     */
+    private void bindValue(int varId, Object val, boolean force) {
+        int slot = indexOfBound(varId);
+        final long version = val instanceof ContentVersioned ? ((ContentVersioned) val).getContentVersion() : 0;
+        if (!force && slot >= 0 && mBoundValues[slot] == val && mBoundVersions[slot] == version) {
+            return;
+        }
         mDataBinding.setVariable(varId, val);
-        if (execPending) {
+        if (slot < 0) {
+            slot = addBound(varId);
+        }
+        mBoundValues[slot] = val;
+        mBoundVersions[slot] = version;
+        mBindingsChanged = true;
+    }
+
+    private int indexOfBound(int varId) {
+        for (int i = 0; i < mBoundCount; i++) {
+            if (mBoundVariables[i] == varId) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int addBound(int varId) {
+        if (mBoundCount == mBoundVariables.length) {
+            final int capacity = mBoundCount * 2;
+            mBoundVariables = Arrays.copyOf(mBoundVariables, capacity);
+            mBoundValues = Arrays.copyOf(mBoundValues, capacity);
+            mBoundVersions = Arrays.copyOf(mBoundVersions, capacity);
+        }
+        mBoundVariables[mBoundCount] = varId;
+        return mBoundCount++;
+    }
+
+    /**
+     * Bindings already requested by observable models are executed as well, even if no variable changed
+     */
+    private void executePendingBindings() {
+        if (mBindingsChanged || mDataBinding.hasPendingBindings()) {
+            mBindingsChanged = false;
             mDataBinding.executePendingBindings();
         }
     }
@@ -82,12 +164,32 @@ public class BindingHolder extends RecyclerView.ViewHolder implements GroupIndic
         return null;
     }
 
-    SafeVariableBinding lockVars() {
-        return new LockedVarsSet(this);
+    void setPrewarmer(ViewPrewarmer prewarmer) {
+        mPrewarmer = prewarmer;
+    }
+
+    /**
+     * @return prewarmer that created this holder if it was not bound yet, null otherwise
+     */
+    @Nullable
+    ViewPrewarmer takePrewarmer() {
+        final ViewPrewarmer prewarmer = mPrewarmer;
+        mPrewarmer = null;
+        return prewarmer;
+    }
+
+    /**
+     * @param force whether values already bound should be bound again
+     * @return binding of this holder variables, the same instance on every call
+     */
+    SafeVariableBinding lockVars(boolean force) {
+        mLockedVars.mForce = force;
+        return mLockedVars;
     }
 
     private static class LockedVarsSet implements SafeVariableBinding {
         private final BindingHolder mHolder;
+        private       boolean       mForce;
 
         LockedVarsSet(BindingHolder holder) {
             mHolder = holder;
@@ -95,12 +197,12 @@ public class BindingHolder extends RecyclerView.ViewHolder implements GroupIndic
 
         @Override
         public void bindValue(int variable, Object value) {
-            mHolder.bindValue(variable, value, false);
+            mHolder.bindValue(variable, value, mForce);
         }
 
         @Override
         public void unlockVars() {
-            mHolder.mDataBinding.executePendingBindings();
+            mHolder.executePendingBindings();
         }
     }
 }
@@ -0,0 +1,29 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.inqbarna.adapters;
+
+/**
+ * Implemented by mutable models whose changes are not notified to their bindings, so {@link BindingHolder} binds them
+ * again when they change in place. Otherwise binding the instance already bound to a variable is skipped.
+ */
+public interface ContentVersioned {
+    /**
+     * @return version of the model contents, to be changed, e.g. incremented, on every change shown by bindings
+     */
+    long getContentVersion();
+}
@@ -0,0 +1,86 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.inqbarna.adapters;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Algorithm computing the changes between current and requested items of a {@link BasicBindingAdapter} update. Engines
+ * run off the main thread, and the same instance may be used by several updates at the same time, so they should keep
+ * no state besides the result they return.
+ * <p>
+ * Common prefix and suffix of both lists are stripped beforehand, so an engine only sees the window that actually
+ * differs, and positions it reports are relative to that window.
+ *
+ * @see DiffEngines
+ * @see BasicBindingAdapter#setDiffEngine(DiffEngine)
+ */
+public interface DiffEngine {
+
+    /**
+     * @return short name identifying this engine on {@link UpdateMetrics#getDiffEngine()}
+     */
+    @NonNull
+    String getName();
+
+    @NonNull
+    <T> DiffResult calculate(@NonNull Input<T> input);
+
+    /**
+     * Items to compare. Comparisons may abort the computation by throwing if the update is no longer needed, engines
+     * should just let those exceptions go
+     */
+    interface Input<T> {
+        @NonNull
+        List<? extends T> getOldItems();
+
+        @NonNull
+        List<? extends T> getNewItems();
+
+        boolean areSameEntity(@NonNull T oldItem, @NonNull T newItem);
+
+        boolean areContentsTheSame(int oldPosition, int newPosition);
+
+        /**
+         * @return payload for a range of changed items, at their position on new items
+         */
+        @Nullable
+        Object getChangePayload(int newPosition, int count);
+
+        /**
+         * @return whether items have a unique key, as given by {@link BasicBindingAdapter.KeyedDiffCallback}
+         */
+        boolean hasKeys();
+
+        /**
+         * Only available when {@link #hasKeys()}
+         */
+        @Nullable
+        Object keyOf(@NonNull T item);
+    }
+
+    /**
+     * Picks the engine for each update
+     */
+    interface Selector {
+        @NonNull
+        DiffEngine select(@NonNull Input<?> input);
+    }
+}
@@ -0,0 +1,265 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.inqbarna.adapters;
+
+import com.google.common.base.Preconditions;
+import com.inqbarna.adapters.internal.ComparisonCallback;
+import com.inqbarna.adapters.internal.DiffUtilResult;
+import com.inqbarna.adapters.internal.KeyedDiff;
+import com.inqbarna.adapters.internal.PatienceDiff;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * Built-in {@link DiffEngine}s, and the selectors to choose among them
+ */
+public final class DiffEngines {
+
+    /**
+     * {@link DiffUtil} with move detection. {@code O((N + M) * D)} on list sizes and number of changes, plus
+     * {@code O(removed * inserted)} to find moves
+     */
+    public static final DiffEngine MYERS = new MyersEngine("myers", true);
+
+    /**
+     * {@link DiffUtil} without move detection, moved items are removed and inserted again
+     */
+    public static final DiffEngine MYERS_NO_MOVES = new MyersEngine("myers-no-moves", false);
+
+    /**
+     * Hash matching of item keys, linear on list sizes. Requires a {@link BasicBindingAdapter.KeyedDiffCallback}
+     *
+     * @see KeyedDiff
+     */
+    public static final DiffEngine KEYED = new KeyedEngine("keyed") {
+        @NonNull
+        @Override
+        <T> DiffResult calculate(List<? extends T> oldItems, List<? extends T> newItems, KeyedDiff.Callback<T> callback) {
+            return KeyedDiff.calculate(oldItems, newItems, callback);
+        }
+    };
+
+    /**
+     * Patience diff over item keys, matching repeated keys by their surroundings and never reporting moves. Requires a
+     * {@link BasicBindingAdapter.KeyedDiffCallback}
+     *
+     * @see PatienceDiff
+     */
+    public static final DiffEngine PATIENCE = new KeyedEngine("patience") {
+        @NonNull
+        @Override
+        <T> DiffResult calculate(List<? extends T> oldItems, List<? extends T> newItems, KeyedDiff.Callback<T> callback) {
+            return PatienceDiff.calculate(oldItems, newItems, callback);
+        }
+    };
+
+    /** Below this combined size, any engine is fast enough */
+    static final int  SMALL_WINDOW          = 512;
+    static final int  CHANGE_SAMPLES        = 32;
+    static final int  MAX_SAMPLE_RADIUS     = 64;
+    /** Comparisons we accept spending on move detection, roughly {@code removed * inserted} */
+    static final long MOVE_DETECTION_BUDGET = 1_000_000L;
+
+    private static final DiffEngine.Selector ADAPTIVE = new DiffEngine.Selector() {
+        @NonNull
+        @Override
+        public DiffEngine select(@NonNull DiffEngine.Input<?> input) {
+            if (input.hasKeys()) {
+                return KEYED;
+            }
+            final int oldSize = input.getOldItems().size();
+            final int newSize = input.getNewItems().size();
+            if (oldSize + newSize <= SMALL_WINDOW) {
+                return MYERS;
+            }
+            final long kept = Math.round((1 - estimateChangeRatio(input)) * Math.min(oldSize, newSize));
+            final long removed = oldSize - kept;
+            final long inserted = newSize - kept;
+            return removed * inserted > MOVE_DETECTION_BUDGET ? MYERS_NO_MOVES : MYERS;
+        }
+
+        @Override
+        public String toString() {
+            return "DiffEngines.adaptive()";
+        }
+    };
+
+    private DiffEngines() {
+    }
+
+    /**
+     * Picks {@link #KEYED} when items have keys. Otherwise it picks {@link #MYERS}, unless the estimated number of
+     * removed and inserted items would make move detection too expensive, in which case it picks
+     * {@link #MYERS_NO_MOVES}
+     */
+    @NonNull
+    public static DiffEngine.Selector adaptive() {
+        return ADAPTIVE;
+    }
+
+    /**
+     * @return selector that always picks given engine
+     */
+    @NonNull
+    public static DiffEngine.Selector fixed(@NonNull final DiffEngine engine) {
+        Preconditions.checkNotNull(engine, "Engine may not be null");
+        return new DiffEngine.Selector() {
+            @NonNull
+            @Override
+            public DiffEngine select(@NonNull DiffEngine.Input<?> input) {
+                return engine;
+            }
+
+            @Override
+            public String toString() {
+                return "DiffEngines.fixed(" + engine.getName() + ")";
+            }
+        };
+    }
+
+    /**
+     * Estimates the fraction of items that are not kept, looking for a sample of old items around their proportional
+     * position on new items
+     */
+    static <T> float estimateChangeRatio(@NonNull DiffEngine.Input<T> input) {
+        final List<? extends T> oldItems = input.getOldItems();
+        final List<? extends T> newItems = input.getNewItems();
+        final int oldSize = oldItems.size();
+        final int newSize = newItems.size();
+        if (oldSize == 0 || newSize == 0) {
+            return 1f;
+        }
+        final int samples = Math.min(CHANGE_SAMPLES, oldSize);
+        final int radius = Math.min(Math.abs(oldSize - newSize) + 8, MAX_SAMPLE_RADIUS);
+        int missing = 0;
+        for (int k = 0; k < samples; k++) {
+            final int oldPosition = (int) ((long) k * oldSize / samples);
+            final int expected = (int) ((long) oldPosition * newSize / oldSize);
+            if (!isAround(input, oldItems.get(oldPosition), newItems, expected, radius)) {
+                missing++;
+            }
+        }
+        return (float) missing / samples;
+    }
+
+    private static <T> boolean isAround(DiffEngine.Input<T> input, @Nullable T oldItem, List<? extends T> newItems, int position, int radius) {
+        if (null == oldItem) {
+            return false;
+        }
+        final int from = Math.max(0, position - radius);
+        final int to = Math.min(newItems.size(), position + radius + 1);
+        for (int j = from; j < to; j++) {
+            final T newItem = newItems.get(j);
+            if (null != newItem && input.areSameEntity(oldItem, newItem)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static final class MyersEngine implements DiffEngine {
+        private final String  name;
+        private final boolean detectMoves;
+
+        MyersEngine(String name, boolean detectMoves) {
+            this.name = name;
+            this.detectMoves = detectMoves;
+        }
+
+        @NonNull
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @NonNull
+        @Override
+        public <T> DiffResult calculate(@NonNull final Input<T> input) {
+            final ComparisonCallback<T> comparison = new ComparisonCallback<>(input.getOldItems(), input.getNewItems(), new ComparisonCallback.Items<T>() {
+                @Override
+                public boolean areSameEntity(@NonNull T oldItem, @NonNull T newItem) {
+                    return input.areSameEntity(oldItem, newItem);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return input.areContentsTheSame(oldPosition, newPosition);
+                }
+
+                @Nullable
+                @Override
+                public Object getChangePayload(int newPosition, int count) {
+                    return input.getChangePayload(newPosition, count);
+                }
+            });
+            return new DiffUtilResult(DiffUtil.calculateDiff(comparison, detectMoves), comparison.getContentChanged());
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private abstract static class KeyedEngine implements DiffEngine {
+        private final String name;
+
+        KeyedEngine(String name) {
+            this.name = name;
+        }
+
+        @NonNull
+        abstract <T> DiffResult calculate(List<? extends T> oldItems, List<? extends T> newItems, KeyedDiff.Callback<T> callback);
+
+        @NonNull
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @NonNull
+        @Override
+        public <T> DiffResult calculate(@NonNull final Input<T> input) {
+            Preconditions.checkState(input.hasKeys(), "Engine '%s' requires a KeyedDiffCallback", name);
+            return calculate(input.getOldItems(), input.getNewItems(), new KeyedDiff.Callback<T>() {
+                @Override
+                public Object keyOf(T item) {
+                    return input.keyOf(item);
+                }
+
+                @Override
+                public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                    return input.areContentsTheSame(oldPosition, newPosition);
+                }
+
+                @Override
+                public Object getChangePayload(int newPosition, int count) {
+                    return input.getChangePayload(newPosition, count);
+                }
+            });
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+}
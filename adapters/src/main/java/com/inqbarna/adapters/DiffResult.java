@@ -0,0 +1,42 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.inqbarna.adapters;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Result of comparing two lists, whatever algorithm was used to compute it.
+ *
+ * @see DiffEngine#calculate(DiffEngine.Input)
+ */
+public interface DiffResult {
+    int NO_POSITION = -1;
+
+    void dispatchUpdatesTo(@NonNull ListUpdateCallback callback);
+
+    /**
+     * @return position at the old list of the item placed at given position of the new list, or {@link #NO_POSITION}
+     * if it's a new item
+     */
+    int convertNewPositionToOld(int newPosition);
+
+    /**
+     * @return whether the item at given position of the new list, being kept from the old list, has different contents
+     */
+    boolean isContentChanged(int newPosition);
+}
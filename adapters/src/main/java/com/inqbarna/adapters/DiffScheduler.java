@@ -0,0 +1,190 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters;
+
+import android.os.Process;
+
+import com.google.common.base.Preconditions;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import androidx.annotation.NonNull;
+import timber.log.Timber;
+
+/**
+ * Executor shared by {@link BasicBindingAdapter} instances to compute their diffs.
+ * <p>
+ * Diffs of adapters attached to a {@link androidx.recyclerview.widget.RecyclerView} run before the ones of detached
+ * adapters, and tasks already superseded by a newer update are dropped before they start. Tasks with same priority
+ * run in submission order, so updates of one adapter keep their order. Parallelism is bounded, worker threads are
+ * created on demand and finish after some idle time.
+ */
+public class DiffScheduler implements Executor {
+
+    /**
+     * Task that may be scheduled with priority
+     */
+    interface Task extends Runnable {
+        boolean isHighPriority();
+
+        /**
+         * @return true if running this task is not needed anymore
+         */
+        boolean isSuperseded();
+
+        /**
+         * Called instead of {@link #run()} when the task was found superseded before starting
+         */
+        void onDropped();
+    }
+
+    private static final long KEEP_ALIVE_SECONDS = 30;
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger(0);
+
+    private static int defaultParallelism = Math.max(1, Math.min(2, Runtime.getRuntime().availableProcessors() - 1));
+    private static DiffScheduler defaultScheduler;
+
+    private final int            parallelism;
+    private final List<Runnable> queue = new ArrayList<>();
+    private int                  workers;
+    private int                  idleWorkers;
+
+    public DiffScheduler(int parallelism) {
+        Preconditions.checkArgument(parallelism >= 1, "Parallelism should be at least 1, but it's %s", parallelism);
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Sets the number of threads of the default scheduler. Only effective before any adapter using it is created.
+     */
+    public static synchronized void setDefaultParallelism(int parallelism) {
+        Preconditions.checkArgument(parallelism >= 1, "Parallelism should be at least 1, but it's %s", parallelism);
+        if (null != defaultScheduler) {
+            Timber.w("Default DiffScheduler already created with parallelism %d, ignoring %d", defaultScheduler.parallelism, parallelism);
+            return;
+        }
+        defaultParallelism = parallelism;
+    }
+
+    @NonNull
+    public static synchronized DiffScheduler getDefault() {
+        if (null == defaultScheduler) {
+            defaultScheduler = new DiffScheduler(defaultParallelism);
+        }
+        return defaultScheduler;
+    }
+
+    @Override
+    public void execute(@NonNull Runnable command) {
+        synchronized (queue) {
+            queue.add(Preconditions.checkNotNull(command, "command may not be null"));
+            if (idleWorkers > 0) {
+                queue.notify();
+            }
+            // Idle workers may not have woken up yet to take tasks submitted in a burst
+            if (queue.size() > idleWorkers && workers < parallelism) {
+                workers++;
+                final Thread thread = new Thread(new Worker(), "DiffScheduler-" + THREAD_COUNTER.getAndIncrement());
+                thread.setDaemon(true);
+                thread.start();
+            }
+        }
+    }
+
+    /**
+     * Takes the first high priority task, or the first task if there's none. Superseded tasks found on the way are
+     * removed and returned to be dropped.
+     */
+    private Runnable takeNext(List<Task> dropped) {
+        Runnable candidate = null;
+        final Iterator<Runnable> iterator = queue.iterator();
+        while (iterator.hasNext()) {
+            final Runnable runnable = iterator.next();
+            if (runnable instanceof Task) {
+                final Task task = (Task) runnable;
+                if (task.isSuperseded()) {
+                    iterator.remove();
+                    dropped.add(task);
+                    continue;
+                }
+                if (task.isHighPriority() && (null == candidate || !isHighPriority(candidate))) {
+                    candidate = task;
+                }
+            }
+            if (null == candidate) {
+                candidate = runnable;
+            }
+        }
+        if (null != candidate) {
+            queue.remove(candidate);
+        }
+        return candidate;
+    }
+
+    private static boolean isHighPriority(Runnable runnable) {
+        return runnable instanceof Task && ((Task) runnable).isHighPriority();
+    }
+
+    private class Worker implements Runnable {
+        @Override
+        public void run() {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            final List<Task> dropped = new ArrayList<>();
+            while (true) {
+                Runnable next;
+                synchronized (queue) {
+                    next = takeNext(dropped);
+                    final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(KEEP_ALIVE_SECONDS);
+                    while (null == next && dropped.isEmpty()) {
+                        final long remaining = deadline - System.nanoTime();
+                        if (remaining <= 0) {
+                            workers--;
+                            return;
+                        }
+                        idleWorkers++;
+                        try {
+                            TimeUnit.NANOSECONDS.timedWait(queue, remaining);
+                        } catch (InterruptedException e) {
+                            // idle timeout still applies
+                        } finally {
+                            idleWorkers--;
+                        }
+                        next = takeNext(dropped);
+                    }
+                }
+
+                for (int i = 0, sz = dropped.size(); i < sz; i++) {
+                    dropped.get(i).onDropped();
+                }
+                dropped.clear();
+
+                if (null != next) {
+                    try {
+                        next.run();
+                    } catch (Throwable throwable) {
+                        Timber.e(throwable, "Uncaught error running task on DiffScheduler");
+                    }
+                }
+            }
+        }
+    }
+}
@@ -41,11 +41,11 @@ public class GroupAttributes {
         return mColor;
     }
 
-    int groupMarginTop() {
+    public int groupMarginTop() {
         return mGroupMarginTop;
     }
 
-    int groupMarginBottom() {
+    public int groupMarginBottom() {
         return mGroupMarginBottom;
     }
 
@@ -19,8 +19,13 @@ package com.inqbarna.adapters;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Map;
 
 import timber.log.Timber;
 
@@ -63,9 +68,29 @@ public class GroupController {
             return EMPTY_RESULT;
         }
 
+        final int changed = applyGroup(items, indexOf, target, groupSize, enable, attributes);
+        return new ResultImpl(indexOf, changed);
+    }
+
+    /**
+     * Starts a batch of group changes on given items. Group heads are looked up all at once when the batch is applied,
+     * and its result notifies merged ranges of changed items, instead of one notification per group.
+     * <p>
+     * Unlike single group operations, heads are matched by identity instead of {@link Object#equals(Object)}.
+     */
+    @NonNull
+    public static Batch batch(@NonNull List<? extends GroupIndicator> items) {
+        return new Batch(items);
+    }
+
+    /**
+     * @return number of items changed, starting at index
+     */
+    private static int applyGroup(
+            List<? extends GroupIndicator> items, int index, GroupIndicator target, int groupSize, boolean enable, @NonNull GroupAttributes attributes) {
         int count = groupSize;
 
-        ListIterator<? extends GroupIndicator> iterator = items.listIterator(indexOf);
+        ListIterator<? extends GroupIndicator> iterator = items.listIterator(index);
         GroupAttributes headAttr = target.attributes();
         headAttr.setGroupHead(true).setGroupSize(groupSize);
         while (iterator.hasNext() && count > 0) {
@@ -87,7 +112,138 @@ public class GroupController {
             Timber.w("Requested group change for %d items, but there were %d items left unchanged because list is not big enough", groupSize, count);
         }
 
-        return new ResultImpl(indexOf, groupSize - count);
+        return groupSize - count;
+    }
+
+    /**
+     * Group changes to apply at once
+     *
+     * @see #batch(List)
+     */
+    public static final class Batch {
+        private final List<? extends GroupIndicator> mItems;
+        private final List<Change>                   mChanges  = new ArrayList<>();
+        private final Map<GroupIndicator, Change>    mByTarget = new IdentityHashMap<>();
+
+        private Batch(List<? extends GroupIndicator> items) {
+            mItems = items;
+        }
+
+        public Batch enableGroup(GroupHead groupHead) {
+            return updateGroupWithColor(groupHead, groupHead.groupSize(), true, groupHead.attributes().color());
+        }
+
+        public Batch disableGroup(GroupHead groupHead) {
+            return updateGroupWithColor(groupHead, groupHead.groupSize(), false, groupHead.attributes().color());
+        }
+
+        public Batch toggleGroup(GroupHead groupHead) {
+            return updateGroupWithColor(groupHead, groupHead.groupSize(), !groupHead.enabled(), groupHead.attributes().color());
+        }
+
+        public Batch updateGroupWithColor(GroupIndicator target, int groupSize, boolean enable, int groupColor) {
+            GroupAttributes attributes = new GroupAttributes();
+            attributes.setColor(groupColor);
+
+            return updateGroupWithAttributes(target, groupSize, enable, attributes);
+        }
+
+        /**
+         * Changes are applied in the order they are added. A later change for the same head replaces the earlier one
+         */
+        public Batch updateGroupWithAttributes(GroupIndicator target, int groupSize, boolean enable, @NonNull GroupAttributes attributes) {
+            Change change = mByTarget.get(target);
+            if (null == change) {
+                change = new Change(target);
+                mByTarget.put(target, change);
+                mChanges.add(change);
+            }
+            change.groupSize = groupSize;
+            change.enable = enable;
+            change.attributes = attributes;
+            return this;
+        }
+
+        /**
+         * Finds all heads in a single pass over items and applies the changes
+         */
+        @NonNull
+        public Result apply() {
+            if (mChanges.isEmpty()) {
+                return EMPTY_RESULT;
+            }
+
+            for (Change change : mChanges) {
+                change.index = -1;
+            }
+            int found = 0;
+            int index = 0;
+            for (GroupIndicator item : mItems) {
+                final Change change = mByTarget.get(item);
+                if (null != change && change.index < 0) {
+                    change.index = index;
+                    if (++found == mChanges.size()) {
+                        break;
+                    }
+                }
+                index++;
+            }
+            if (found < mChanges.size()) {
+                Timber.w("Trying to change %d groups that are not within given items. Won't do anything for them", mChanges.size() - found);
+            }
+
+            final List<Change> applied = new ArrayList<>(found);
+            for (Change change : mChanges) {
+                if (change.index >= 0) {
+                    change.count = applyGroup(mItems, change.index, change.target, change.groupSize, change.enable, change.attributes);
+                    applied.add(change);
+                }
+            }
+            if (applied.isEmpty()) {
+                return EMPTY_RESULT;
+            }
+
+            Collections.sort(applied, new Comparator<Change>() {
+                @Override
+                public int compare(Change o1, Change o2) {
+                    return o1.index < o2.index ? -1 : (o1.index == o2.index ? 0 : 1);
+                }
+            });
+            final int[] starts = new int[applied.size()];
+            final int[] counts = new int[applied.size()];
+            int ranges = 0;
+            int start = applied.get(0).index;
+            int end = start + applied.get(0).count;
+            for (int i = 1; i < applied.size(); i++) {
+                final Change change = applied.get(i);
+                if (change.index <= end) {
+                    end = Math.max(end, change.index + change.count);
+                } else {
+                    starts[ranges] = start;
+                    counts[ranges] = end - start;
+                    ranges++;
+                    start = change.index;
+                    end = start + change.count;
+                }
+            }
+            starts[ranges] = start;
+            counts[ranges] = end - start;
+            ranges++;
+            return new RangesResult(starts, counts, ranges);
+        }
+    }
+
+    private static final class Change {
+        final GroupIndicator target;
+        int                  groupSize;
+        boolean              enable;
+        GroupAttributes      attributes;
+        int                  index = -1;
+        int                  count;
+
+        Change(GroupIndicator target) {
+            this.target = target;
+        }
     }
 
     public interface Result {
@@ -110,17 +266,40 @@ public class GroupController {
         @Override
         public void notifyOn(RecyclerView.Adapter adapter) {
             if (mStart >= 0) {
-                if (mStart + mCount > adapter.getItemCount()) {
-                    Timber.w(
-                            "Tried to apply notification on adapter with %d items, with start = %d and span = %d. That would be exceeding limits",
-                            adapter.getItemCount(),
-                            mStart,
-                            mCount);
-                    return;
-                }
-                adapter.notifyItemRangeChanged(mStart, mCount);
+                notifyRange(adapter, mStart, mCount);
             }
         }
     }
 
+    private static class RangesResult implements Result {
+        private final int[] mStarts;
+        private final int[] mCounts;
+        private final int   mRanges;
+
+        private RangesResult(int[] starts, int[] counts, int ranges) {
+            mStarts = starts;
+            mCounts = counts;
+            mRanges = ranges;
+        }
+
+        @Override
+        public void notifyOn(RecyclerView.Adapter adapter) {
+            for (int i = 0; i < mRanges; i++) {
+                notifyRange(adapter, mStarts[i], mCounts[i]);
+            }
+        }
+    }
+
+    private static void notifyRange(RecyclerView.Adapter adapter, int start, int count) {
+        if (start + count > adapter.getItemCount()) {
+            Timber.w(
+                    "Tried to apply notification on adapter with %d items, with start = %d and span = %d. That would be exceeding limits",
+                    adapter.getItemCount(),
+                    start,
+                    count);
+            return;
+        }
+        adapter.notifyItemRangeChanged(start, count);
+    }
+
 }
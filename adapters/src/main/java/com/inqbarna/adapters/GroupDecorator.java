@@ -32,7 +32,7 @@ import android.view.View;
 public class GroupDecorator extends RecyclerView.ItemDecoration {
 
     private Rect  mDrawRect;
-    private Rect  mDbgRect;
+    private Rect  mChildRect;
     private Paint mPaint;
 
     private final boolean DEBUG = false;
@@ -41,6 +41,7 @@ public class GroupDecorator extends RecyclerView.ItemDecoration {
 
     public GroupDecorator() {
         mDrawRect = new Rect();
+        mChildRect = new Rect();
         mPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
         mPaint.setStyle(Paint.Style.FILL);
         if (DEBUG) {
@@ -48,7 +49,6 @@ public class GroupDecorator extends RecyclerView.ItemDecoration {
             mDbgPaint.setStyle(Paint.Style.STROKE);
             mDbgPaint.setStrokeWidth(1);
             mDbgPaint.setColor(Color.RED);
-            mDbgRect = new Rect();
         }
     }
 
@@ -63,39 +63,67 @@ public class GroupDecorator extends RecyclerView.ItemDecoration {
         }
     }
 
+    /**
+     * Consecutive children of the same group color are drawn as a single rect, as long as they are stacked one after
+     * the other (a list, or a row of a grid)
+     */
     @Override
     public void onDraw(Canvas c, RecyclerView parent, RecyclerView.State state) {
         RecyclerView.LayoutManager layoutManager = parent.getLayoutManager();
         int count = layoutManager.getChildCount();
+        boolean hasRun = false;
+        int runColor = 0;
         for (int i = 0; i < count; i++) {
             View child = layoutManager.getChildAt(i);
             GroupIndicator indicator = getGroupIndicator(parent, child);
             if (null != indicator && indicator.enabled()) {
-                layoutManager.getDecoratedBoundsWithMargins(child, mDrawRect);
+                layoutManager.getDecoratedBoundsWithMargins(child, mChildRect);
                 if (DEBUG) {
-                    mDbgRect.set(mDrawRect);
+                    c.drawRect(mChildRect, mDbgPaint);
                 }
                 final GroupAttributes attributes = indicator.attributes();
-                mDrawRect.top += attributes.groupMarginTop();
-                mDrawRect.bottom -= attributes.groupMarginBottom();
-                mPaint.setColor(attributes.color());
-                c.drawRect(mDrawRect, mPaint);
-
-                if (DEBUG) {
-                    c.drawRect(mDbgRect, mDbgPaint);
+                mChildRect.top += attributes.groupMarginTop();
+                mChildRect.bottom -= attributes.groupMarginBottom();
+                if (hasRun && attributes.color() == runColor && isNextToRun(mChildRect)) {
+                    mDrawRect.union(mChildRect);
+                } else {
+                    if (hasRun) {
+                        drawRun(c, runColor);
+                    }
+                    mDrawRect.set(mChildRect);
+                    runColor = attributes.color();
+                    hasRun = true;
                 }
             }
         }
+        if (hasRun) {
+            drawRun(c, runColor);
+        }
+    }
+
+    private boolean isNextToRun(Rect rect) {
+        final Rect run = mDrawRect;
+        final boolean sameColumn = rect.left == run.left && rect.right == run.right;
+        final boolean sameRow = rect.top == run.top && rect.bottom == run.bottom;
+        return (sameColumn && (rect.top == run.bottom || rect.bottom == run.top))
+               || (sameRow && (rect.left == run.right || rect.right == run.left));
+    }
+
+    private void drawRun(Canvas c, int color) {
+        mPaint.setColor(color);
+        c.drawRect(mDrawRect, mPaint);
     }
 
+    /**
+     * Removed or disappearing children report {@link RecyclerView#NO_POSITION}; they are not decorated, same as when
+     * the holder was looked up by adapter position
+     */
     @Nullable
     private GroupIndicator getGroupIndicator(RecyclerView parent, View child) {
-        int adapterPosition = parent.getChildAdapterPosition(child);
-        RecyclerView.ViewHolder holder = parent.findViewHolderForAdapterPosition(adapterPosition);
+        RecyclerView.ViewHolder holder = parent.getChildViewHolder(child);
         GroupIndicator indicator = null;
-        if (holder instanceof GroupIndicator) {
+        if (holder instanceof GroupIndicator && holder.getAdapterPosition() != RecyclerView.NO_POSITION) {
             indicator = (GroupIndicator) holder;
-
         }
         return indicator;
     }
@@ -0,0 +1,389 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.inqbarna.adapters;
+
+import com.google.common.base.Preconditions;
+
+import java.util.Arrays;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.GridLayoutManager;
+
+/**
+ * Ranges of enabled groups in a {@link BindingAdapter}, as defined by the group heads among its items. Range
+ * notifications are applied as they come: groups after the affected position are shifted and the affected items are
+ * marked dirty. Data may not be consistent with a notification until the whole batch of them has been sent, so dirty
+ * items are only scanned for group heads on next lookup, instead of scanning all items again.
+ * <p>
+ * Groups are kept sorted in primitive arrays of starts and (exclusive) ends, so lookups are a binary search that
+ * allocates nothing, and every group costs two ints and a reference.
+ * <p>
+ * Boundaries of first and last rows of each group are computed on first use and kept until the group, or anything
+ * near enough to share a row with it, is notified as changed, or until {@link #clearRowBoundaries()} is called
+ * because span configuration changed.
+ */
+class GroupIndex {
+    static final int NO_GROUP = -1;
+
+    private static final int UNKNOWN = Integer.MIN_VALUE;
+
+    /** Beyond this number of dirty ranges, a complete rebuild is cheaper to manage */
+    private static final int MAX_DIRTY_RANGES = 16;
+
+    private final BindingAdapter adapter;
+
+    private int[]             starts     = new int[16];
+    private int[]             ends       = new int[16];
+    private GroupAttributes[] attributes = new GroupAttributes[16];
+    private int[]             firstRowEnds = new int[16];
+    private int[]             lastRowStarts = new int[16];
+    private int               groupCount;
+    /** Span count row boundaries were computed with, bounds how far from a group its rows may reach */
+    private int               rowSpanCount;
+
+    private final int[] dirtyStarts = new int[MAX_DIRTY_RANGES];
+    private final int[] dirtyEnds   = new int[MAX_DIRTY_RANGES];
+    private int         dirtyCount;
+
+    private boolean valid;
+
+    GroupIndex(@NonNull BindingAdapter adapter) {
+        this.adapter = adapter;
+    }
+
+    /**
+     * @return index of the group the given position belongs to, or {@link #NO_GROUP}
+     */
+    int groupAt(int position) {
+        ensureIndex();
+        final int group = firstStartAfter(position) - 1;
+        return group >= 0 && ends[group] > position ? group : NO_GROUP;
+    }
+
+    int start(int group) {
+        return starts[group];
+    }
+
+    /**
+     * @return first position after the given group
+     */
+    int end(int group) {
+        return ends[group];
+    }
+
+    GroupAttributes attributes(int group) {
+        return attributes[group];
+    }
+
+    /**
+     * @return whether position, within given group, is laid out on the first row of the group
+     */
+    boolean isOnFirstRow(int group, int position, int spanCount, @Nullable GridLayoutManager.SpanSizeLookup spanSizeLookup) {
+        Preconditions.checkElementIndex(position - starts[group], ends[group] - starts[group], "Position within group");
+        if (firstRowEnds[group] == UNKNOWN) {
+            computeRowBoundaries(group, spanCount, spanSizeLookup);
+        }
+        return position < firstRowEnds[group];
+    }
+
+    /**
+     * @return whether position, within given group, is laid out on the last row of the group
+     */
+    boolean isOnLastRow(int group, int position, int spanCount, @Nullable GridLayoutManager.SpanSizeLookup spanSizeLookup) {
+        Preconditions.checkElementIndex(position - starts[group], ends[group] - starts[group], "Position within group");
+        if (lastRowStarts[group] == UNKNOWN) {
+            computeRowBoundaries(group, spanCount, spanSizeLookup);
+        }
+        return position >= lastRowStarts[group];
+    }
+
+    void clearRowBoundaries() {
+        Arrays.fill(firstRowEnds, 0, groupCount, UNKNOWN);
+        Arrays.fill(lastRowStarts, 0, groupCount, UNKNOWN);
+        rowSpanCount = 0;
+    }
+
+    private void computeRowBoundaries(int group, int spanCount, @Nullable GridLayoutManager.SpanSizeLookup spanSizeLookup) {
+        rowSpanCount = Math.max(rowSpanCount, spanCount);
+
+        int pos = starts[group];
+        int numColumns = spanCount;
+        while (numColumns > 0) {
+            if (null != spanSizeLookup) {
+                numColumns -= spanSizeLookup.getSpanSize(pos);
+            } else {
+                numColumns--;
+            }
+            pos++;
+        }
+        firstRowEnds[group] = pos;
+
+        pos = ends[group] - 1;
+        numColumns = spanCount;
+        while (numColumns > 0) {
+            if (null != spanSizeLookup) {
+                numColumns -= spanSizeLookup.getSpanSize(pos);
+            } else {
+                numColumns--;
+            }
+            pos--;
+        }
+        lastRowStarts[group] = pos + 1;
+    }
+
+    /**
+     * Forgets row boundaries of groups whose rows may include any position in {@code [from, to]}
+     */
+    private void resetRowBoundaries(int from, int to) {
+        if (rowSpanCount == 0) {
+            return;
+        }
+        for (int i = Math.max(0, firstStartAtOrAfter(from - rowSpanCount) - 1); i < groupCount && starts[i] - rowSpanCount <= to; i++) {
+            if (ends[i] + rowSpanCount > from) {
+                firstRowEnds[i] = UNKNOWN;
+                lastRowStarts[i] = UNKNOWN;
+            }
+        }
+    }
+
+    void invalidate() {
+        valid = false;
+        clearGroups(0, groupCount);
+        dirtyCount = 0;
+    }
+
+    void onInserted(int position, int count) {
+        if (!valid) {
+            return;
+        }
+        resetRowBoundaries(position, position);
+        shiftGroups(position, count);
+        for (int i = 0; i < dirtyCount; i++) {
+            if (dirtyStarts[i] >= position) {
+                dirtyStarts[i] += count;
+            }
+            if (dirtyEnds[i] > position) {
+                dirtyEnds[i] += count;
+            }
+        }
+        markDirty(position, position + count);
+    }
+
+    void onRemoved(int position, int count) {
+        if (!valid) {
+            return;
+        }
+        resetRowBoundaries(position, position + count);
+        final int first = firstStartAtOrAfter(position);
+        clearGroups(first, firstStartAtOrAfter(position + count));
+        shiftGroups(position, -count);
+        if (first > 0 && first < groupCount && ends[first - 1] > starts[first]) {
+            // Groups after the removal now overlap an earlier one, leave it to a complete rebuild
+            invalidate();
+            return;
+        }
+        int kept = 0;
+        for (int i = 0; i < dirtyCount; i++) {
+            final int start = positionAfterRemoval(dirtyStarts[i], position, count);
+            final int end = positionAfterRemoval(dirtyEnds[i], position, count);
+            if (start < end) {
+                dirtyStarts[kept] = start;
+                dirtyEnds[kept] = end;
+                kept++;
+            }
+        }
+        dirtyCount = kept;
+    }
+
+    void onMoved(int from, int to, int count) {
+        if (!valid) {
+            return;
+        }
+        onRemoved(from, count);
+        onInserted(to, count);
+    }
+
+    void onChanged(int position, int count) {
+        if (valid) {
+            resetRowBoundaries(position, position + count - 1);
+            markDirty(position, position + count);
+        }
+    }
+
+    private static int positionAfterRemoval(int position, int removedStart, int removedCount) {
+        if (position <= removedStart) {
+            return position;
+        }
+        return Math.max(removedStart, position - removedCount);
+    }
+
+    /**
+     * @return index of the first group starting after given position, or {@link #groupCount} if none
+     */
+    private int firstStartAfter(int position) {
+        return firstStartAtOrAfter(position + 1);
+    }
+
+    private int firstStartAtOrAfter(int position) {
+        int lo = 0;
+        int hi = groupCount;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (starts[mid] < position) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Moves by delta every group with its head at or after the given position. A group containing the position keeps
+     * its range, as it is defined by the head position and its size
+     */
+    private void shiftGroups(int from, int delta) {
+        for (int i = firstStartAtOrAfter(from); i < groupCount; i++) {
+            starts[i] += delta;
+            ends[i] += delta;
+            if (firstRowEnds[i] != UNKNOWN) {
+                firstRowEnds[i] += delta;
+            }
+            if (lastRowStarts[i] != UNKNOWN) {
+                lastRowStarts[i] += delta;
+            }
+        }
+    }
+
+    /**
+     * Removes groups with indices {@code [first, last)}
+     */
+    private void clearGroups(int first, int last) {
+        if (first >= last) {
+            return;
+        }
+        System.arraycopy(starts, last, starts, first, groupCount - last);
+        System.arraycopy(ends, last, ends, first, groupCount - last);
+        System.arraycopy(attributes, last, attributes, first, groupCount - last);
+        System.arraycopy(firstRowEnds, last, firstRowEnds, first, groupCount - last);
+        System.arraycopy(lastRowStarts, last, lastRowStarts, first, groupCount - last);
+        final int newCount = groupCount - (last - first);
+        Arrays.fill(attributes, newCount, groupCount, null);
+        groupCount = newCount;
+    }
+
+    private void markDirty(int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            if (dirtyStarts[i] <= end && start <= dirtyEnds[i]) {
+                dirtyStarts[i] = Math.min(dirtyStarts[i], start);
+                dirtyEnds[i] = Math.max(dirtyEnds[i], end);
+                return;
+            }
+        }
+        if (dirtyCount == MAX_DIRTY_RANGES) {
+            invalidate();
+        } else {
+            dirtyStarts[dirtyCount] = start;
+            dirtyEnds[dirtyCount] = end;
+            dirtyCount++;
+        }
+    }
+
+    private void ensureIndex() {
+        if (valid && dirtyCount == 0) {
+            return;
+        }
+        try {
+            if (!valid) {
+                clearGroups(0, groupCount);
+                dirtyCount = 0;
+                scan(0, adapter.getItemCount());
+                valid = true;
+            } else {
+                rescanDirty();
+            }
+        } catch (RuntimeException e) {
+            // Leave nothing half done, next lookup will try again from scratch
+            invalidate();
+            throw e;
+        }
+    }
+
+    private void rescanDirty() {
+        final int itemCount = adapter.getItemCount();
+        // Stale heads of every dirty range go first, so they don't clash with heads found on another range
+        for (int i = 0; i < dirtyCount; i++) {
+            dirtyEnds[i] = Math.min(dirtyEnds[i], itemCount);
+            if (dirtyStarts[i] < dirtyEnds[i]) {
+                clearGroups(firstStartAtOrAfter(dirtyStarts[i]), firstStartAtOrAfter(dirtyEnds[i]));
+            }
+        }
+        for (int i = 0; i < dirtyCount; i++) {
+            scan(dirtyStarts[i], dirtyEnds[i]);
+        }
+        dirtyCount = 0;
+    }
+
+    private void scan(int start, int end) {
+        for (int i = start; i < end; i++) {
+            final TypeMarker dataAt = adapter.getDataAt(i);
+            if (dataAt instanceof GroupIndicator) {
+                GroupIndicator indicator = (GroupIndicator) dataAt;
+                final GroupAttributes headAttributes = indicator.attributes();
+                if (indicator.enabled() && headAttributes.isGroupHead()) {
+                    final int groupSize = headAttributes.groupSize();
+                    Preconditions.checkArgument(groupSize >= 1, "Group size is required to be greater or equal to 1, but it's %d", groupSize);
+                    add(i, i + groupSize, headAttributes);
+                }
+            }
+        }
+    }
+
+    private void add(int start, int end, GroupAttributes headAttributes) {
+        final int index = firstStartAtOrAfter(start);
+        final boolean replace = index < groupCount && starts[index] == start;
+        final int next = replace ? index + 1 : index;
+        if ((index > 0 && ends[index - 1] > start) || (next < groupCount && starts[next] < end)) {
+            throw new IllegalArgumentException("Overlapping group at [" + start + ", " + end + ")");
+        }
+        if (!replace) {
+            if (groupCount == starts.length) {
+                final int capacity = groupCount * 2;
+                starts = Arrays.copyOf(starts, capacity);
+                ends = Arrays.copyOf(ends, capacity);
+                attributes = Arrays.copyOf(attributes, capacity);
+                firstRowEnds = Arrays.copyOf(firstRowEnds, capacity);
+                lastRowStarts = Arrays.copyOf(lastRowStarts, capacity);
+            }
+            System.arraycopy(starts, index, starts, index + 1, groupCount - index);
+            System.arraycopy(ends, index, ends, index + 1, groupCount - index);
+            System.arraycopy(attributes, index, attributes, index + 1, groupCount - index);
+            System.arraycopy(firstRowEnds, index, firstRowEnds, index + 1, groupCount - index);
+            System.arraycopy(lastRowStarts, index, lastRowStarts, index + 1, groupCount - index);
+            groupCount++;
+        }
+        starts[index] = start;
+        ends[index] = end;
+        attributes[index] = headAttributes;
+        firstRowEnds[index] = UNKNOWN;
+        lastRowStarts[index] = UNKNOWN;
+    }
+}
@@ -0,0 +1,150 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters;
+
+import com.google.common.base.Preconditions;
+import com.google.common.collect.ImmutableList;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Explicit batch of operations to be applied on a {@link BasicBindingAdapter} through
+ * {@link BasicBindingAdapter#applyPatch(ListPatch)}, for producers that already know what changed and don't need a
+ * diff to be computed.
+ * <p>
+ * Operations are applied in the order they were added, each position being relative to the list as left by the
+ * previous operations.
+ */
+public final class ListPatch<T> {
+
+    static final int INSERT  = 0;
+    static final int REMOVE  = 1;
+    static final int REPLACE = 2;
+    static final int MOVE    = 3;
+
+    static final class Operation<T> {
+        final int               type;
+        final int               position;
+        final int               extra;
+        final List<? extends T> items;
+
+        Operation(int type, int position, int extra, List<? extends T> items) {
+            this.type = type;
+            this.position = position;
+            this.extra = extra;
+            this.items = items;
+        }
+    }
+
+    private final List<Operation<T>> operations;
+
+    private ListPatch(Builder<T> builder) {
+        operations = Collections.unmodifiableList(new ArrayList<>(builder.operations));
+    }
+
+    List<Operation<T>> operations() {
+        return operations;
+    }
+
+    public int size() {
+        return operations.size();
+    }
+
+    /**
+     * Validates the patch against a list of the given size
+     *
+     * @return size of the list once the patch has been applied
+     * @throws IndexOutOfBoundsException if any operation falls outside the list
+     */
+    int checkBounds(int size) {
+        for (int i = 0, sz = operations.size(); i < sz; i++) {
+            final Operation<T> operation = operations.get(i);
+            switch (operation.type) {
+                case INSERT:
+                    checkPosition(i, operation.position, size + 1);
+                    size += operation.items.size();
+                    break;
+                case REMOVE:
+                    checkPosition(i, operation.position, size);
+                    checkPosition(i, operation.position + operation.extra - 1, size);
+                    size -= operation.extra;
+                    break;
+                case REPLACE:
+                    checkPosition(i, operation.position, size);
+                    break;
+                case MOVE:
+                    checkPosition(i, operation.position, size);
+                    checkPosition(i, operation.extra, size);
+                    break;
+            }
+        }
+        return size;
+    }
+
+    private static void checkPosition(int operation, int position, int size) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("Operation " + operation + " of patch refers position " + position + " but list size is " + size);
+        }
+    }
+
+    public static class Builder<T> {
+        private final List<Operation<T>> operations = new ArrayList<>();
+
+        public Builder<T> insert(int position, @NonNull T item) {
+            return insert(position, Collections.singletonList(Preconditions.checkNotNull(item, "item may not be null")));
+        }
+
+        public Builder<T> insert(int position, @NonNull List<? extends T> items) {
+            if (!items.isEmpty()) {
+                operations.add(new Operation<T>(INSERT, position, 0, ImmutableList.copyOf(items)));
+            }
+            return this;
+        }
+
+        public Builder<T> remove(int position) {
+            return remove(position, 1);
+        }
+
+        public Builder<T> remove(int position, int count) {
+            Preconditions.checkArgument(count >= 0, "Count must not be negative, but it's %s", count);
+            if (count > 0) {
+                operations.add(new Operation<T>(REMOVE, position, count, null));
+            }
+            return this;
+        }
+
+        public Builder<T> replace(int position, @NonNull T item) {
+            operations.add(new Operation<T>(REPLACE, position, 0, Collections.singletonList(Preconditions.checkNotNull(item, "item may not be null"))));
+            return this;
+        }
+
+        public Builder<T> move(int fromPosition, int toPosition) {
+            if (fromPosition != toPosition) {
+                operations.add(new Operation<T>(MOVE, fromPosition, toPosition, null));
+            }
+            return this;
+        }
+
+        public ListPatch<T> build() {
+            return new ListPatch<>(this);
+        }
+    }
+}
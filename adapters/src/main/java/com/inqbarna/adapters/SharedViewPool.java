@@ -0,0 +1,122 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.inqbarna.adapters;
+
+import android.util.SparseIntArray;
+
+import com.google.common.base.Preconditions;
+
+import androidx.annotation.LayoutRes;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import timber.log.Timber;
+
+/**
+ * {@link RecyclerView.RecycledViewPool} shared by several {@link BindingAdapter}s, so screens showing the same layouts
+ * reuse their holders instead of inflating them again. View types of binding adapters are layout resources, so holders
+ * of one layout are interchangeable among all of them.
+ * <p>
+ * Limit of each view type is sized after the peak number of its holders seen on screen at once in any of the lists,
+ * so a list scrolling a whole screen, like a wide grid does on each row, finds enough holders in the pool.
+ * <p>
+ * Holders drop the {@link androidx.lifecycle.LifecycleOwner} of their adapter when recycled, and take the one of the
+ * adapter binding them next.
+ */
+@MainThread
+public final class SharedViewPool {
+    /**
+     * Pool limit per view type of {@link RecyclerView.RecycledViewPool} when not set
+     */
+    private static final int DEFAULT_POOL_LIMIT = 5;
+
+    private final RecyclerView.RecycledViewPool mPool  = new RecyclerView.RecycledViewPool();
+    private final SparseIntArray                mPeaks = new SparseIntArray();
+    private final SparseIntArray                mLimits = new SparseIntArray();
+    private final int                           mMinLimit;
+
+    public SharedViewPool() {
+        this(DEFAULT_POOL_LIMIT);
+    }
+
+    /**
+     * @param minLimit limit of any view type, even if less holders are shown at once
+     */
+    public SharedViewPool(int minLimit) {
+        Preconditions.checkArgument(minLimit >= 1, "minLimit should be at least 1, but it's %s", minLimit);
+        mMinLimit = minLimit;
+    }
+
+    /**
+     * Makes the adapter use this pool on every RecyclerView it gets attached to, starting with the current one if any
+     */
+    public void attach(@NonNull BindingAdapter adapter) {
+        Preconditions.checkNotNull(adapter, "adapter may not be null").setSharedViewPool(this);
+    }
+
+    public void detach(@NonNull BindingAdapter adapter) {
+        Preconditions.checkNotNull(adapter, "adapter may not be null").setSharedViewPool(null);
+    }
+
+    /**
+     * @return pool to be set on RecyclerViews not using a {@link BindingAdapter}, or to prewarm
+     */
+    @NonNull
+    public RecyclerView.RecycledViewPool getPool() {
+        return mPool;
+    }
+
+    /**
+     * @return peak number of holders of the layout seen on screen at once in a single list
+     */
+    public int getPeakCount(@LayoutRes int layout) {
+        return mPeaks.get(layout);
+    }
+
+    void onAttachedToRecyclerView(RecyclerView recyclerView) {
+        if (recyclerView.getRecycledViewPool() != mPool) {
+            recyclerView.setRecycledViewPool(mPool);
+        }
+    }
+
+    /**
+     * @param onScreen number of holders of the layout currently on screen in the list of the adapter calling
+     */
+    void onHolderShown(int layout, int onScreen) {
+        if (onScreen > mPeaks.get(layout)) {
+            mPeaks.put(layout, onScreen);
+            raiseLimit(layout, onScreen);
+        }
+    }
+
+    /**
+     * Sets the pool limit of the layout to the given one, or the minimum limit if bigger. Once set, a limit is never
+     * lowered
+     */
+    void raiseLimit(int layout, int limit) {
+        final int target = Math.max(mMinLimit, limit);
+        final int current = mLimits.get(layout, -1);
+        if (current < 0 || target > current) {
+            mLimits.put(layout, target);
+            mPool.setMaxRecycledViews(layout, target);
+            if (BindingAdapter.DEBUG) {
+                Timber.d("Pool limit of type 0x%s set to %d", Integer.toHexString(layout), target);
+            }
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters;
+
+import com.google.common.base.MoreObjects;
+
+import androidx.annotation.Nullable;
+
+/**
+ * Timings and change counts of a single {@link BasicBindingAdapter#updateItems(java.util.List)} request, as reported to
+ * a {@link BasicBindingAdapter.UpdateMetricsListener}. Times are in nanoseconds, and are zero for the stages the update
+ * didn't reach.
+ */
+public final class UpdateMetrics {
+    private final long    snapshotNanos;
+    private final long    queueWaitNanos;
+    private final long    diffNanos;
+    private final long    applyNanos;
+    private final int     oldSize;
+    private final int     newSize;
+    private final int     inserted;
+    private final int     removed;
+    private final int     moved;
+    private final int     changed;
+    private final boolean cancelled;
+    private final boolean superseded;
+    private final String  diffEngine;
+
+    UpdateMetrics(Builder builder) {
+        snapshotNanos = builder.snapshotNanos;
+        queueWaitNanos = builder.queueWaitNanos;
+        diffNanos = builder.diffNanos;
+        applyNanos = builder.applyNanos;
+        oldSize = builder.oldSize;
+        newSize = builder.newSize;
+        inserted = builder.inserted;
+        removed = builder.removed;
+        moved = builder.moved;
+        changed = builder.changed;
+        cancelled = builder.cancelled;
+        superseded = builder.superseded;
+        diffEngine = builder.diffEngine;
+    }
+
+    /**
+     * @return time spent on the main thread copying current data before diffing
+     */
+    public long getSnapshotNanos() {
+        return snapshotNanos;
+    }
+
+    /**
+     * @return time since the update was requested until its diff started computing
+     */
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
+    /**
+     * @return time spent computing the diff off the main thread
+     */
+    public long getDiffNanos() {
+        return diffNanos;
+    }
+
+    /**
+     * @return time spent on the main thread applying the result and notifying changes, summing all frames if it was
+     * applied by frames
+     */
+    public long getApplyNanos() {
+        return applyNanos;
+    }
+
+    public int getOldSize() {
+        return oldSize;
+    }
+
+    public int getNewSize() {
+        return newSize;
+    }
+
+    /**
+     * @return number of inserted items
+     */
+    public int getInserted() {
+        return inserted;
+    }
+
+    /**
+     * @return number of removed items
+     */
+    public int getRemoved() {
+        return removed;
+    }
+
+    /**
+     * @return number of moved items
+     */
+    public int getMoved() {
+        return moved;
+    }
+
+    /**
+     * @return number of kept items whose contents changed
+     */
+    public int getChanged() {
+        return changed;
+    }
+
+    /**
+     * @return true if all subscribers were gone before the update was applied
+     */
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return true if the update was discarded in favour of a newer one, or of a new diff against modified data.
+     * Subscribers of a superseded update complete with the newer result
+     */
+    public boolean isSuperseded() {
+        return superseded;
+    }
+
+    /**
+     * @return name of the {@link DiffEngine} that computed the changes, or null if no diff was computed, as happens
+     * when items were only appended, prepended or removed at the ends
+     */
+    @Nullable
+    public String getDiffEngine() {
+        return diffEngine;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                          .add("snapshotNanos", snapshotNanos)
+                          .add("queueWaitNanos", queueWaitNanos)
+                          .add("diffNanos", diffNanos)
+                          .add("applyNanos", applyNanos)
+                          .add("oldSize", oldSize)
+                          .add("newSize", newSize)
+                          .add("inserted", inserted)
+                          .add("removed", removed)
+                          .add("moved", moved)
+                          .add("changed", changed)
+                          .add("cancelled", cancelled)
+                          .add("superseded", superseded)
+                          .add("diffEngine", diffEngine)
+                          .toString();
+    }
+
+    static class Builder {
+        long    snapshotNanos;
+        long    queueWaitNanos;
+        long    diffNanos;
+        long    applyNanos;
+        int     oldSize;
+        int     newSize;
+        int     inserted;
+        int     removed;
+        int     moved;
+        int     changed;
+        boolean cancelled;
+        boolean superseded;
+        String  diffEngine;
+
+        UpdateMetrics build() {
+            return new UpdateMetrics(this);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters;
+
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+/**
+ * Change payload telling which binding variables of an item have changed. When every payload of a bind request is of
+ * this type, {@link BindingAdapter} only binds those variables again instead of the whole item.
+ *
+ * @see BasicBindingAdapter.ChangedVariables
+ */
+public final class VariablesPayload {
+    private final int[] variables;
+
+    private VariablesPayload(int[] sortedVariables) {
+        variables = sortedVariables;
+    }
+
+    @NonNull
+    public static VariablesPayload of(@NonNull int... variables) {
+        final int[] sorted = variables.clone();
+        Arrays.sort(sorted);
+        return new VariablesPayload(sorted);
+    }
+
+    public boolean contains(int variable) {
+        return Arrays.binarySearch(variables, variable) >= 0;
+    }
+
+    /**
+     * @return whether the given payloads, as received by a bind request, can be served by rebinding some variables only
+     */
+    static boolean isPartial(@Nullable List<Object> payloads) {
+        if (null == payloads || payloads.isEmpty()) {
+            return false;
+        }
+        for (int i = 0, sz = payloads.size(); i < sz; i++) {
+            if (!(payloads.get(i) instanceof VariablesPayload)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @param changedVariables changed variables per position, null entries meaning everything changed
+     * @return payload with the variables changed at any position of the range, or null if some position needs a full
+     * bind
+     */
+    @Nullable
+    static VariablesPayload union(@NonNull int[][] changedVariables, int position, int count) {
+        if (count == 1) {
+            final int[] variables = changedVariables[position];
+            return null == variables ? null : of(variables);
+        }
+
+        int total = 0;
+        for (int i = position; i < position + count; i++) {
+            if (null == changedVariables[i]) {
+                return null;
+            }
+            total += changedVariables[i].length;
+        }
+        final int[] merged = new int[total];
+        int offset = 0;
+        for (int i = position; i < position + count; i++) {
+            System.arraycopy(changedVariables[i], 0, merged, offset, changedVariables[i].length);
+            offset += changedVariables[i].length;
+        }
+        return of(merged);
+    }
+
+    @Override
+    public String toString() {
+        return "VariablesPayload" + Arrays.toString(variables);
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.inqbarna.adapters;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.SparseIntArray;
+import android.view.LayoutInflater;
+import android.view.View;
+
+import com.google.common.base.Preconditions;
+
+import java.util.concurrent.Executor;
+
+import androidx.annotation.LayoutRes;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.RecyclerView;
+import timber.log.Timber;
+
+/**
+ * Inflates views of a {@link BindingAdapter} ahead of time, so the first scroll into a new view type does not pay for
+ * layout inflation.
+ * <p>
+ * Layouts are inflated on a background executor, each with an inflater of its own. Data bindings are created on main
+ * thread, since they schedule their rebinds on the thread creating them, honoring the override component of the
+ * adapter. Resulting holders are put on the {@link RecyclerView.RecycledViewPool} of the RecyclerView, and
+ * {@link #getSatisfiedCount()} tells how many of them were later bound instead of creating a new holder.
+ * <p>
+ * Layouts containing views that can't be created off main thread should not be prewarmed.
+ */
+public final class ViewPrewarmer {
+    /**
+     * Pool limit per view type of {@link RecyclerView.RecycledViewPool} when not set
+     */
+    private static final int DEFAULT_POOL_LIMIT = 5;
+
+    private static final Handler MAIN_THREAD_HANDLER = new Handler(Looper.getMainLooper());
+
+    private final BindingAdapter mAdapter;
+    private final RecyclerView   mRecyclerView;
+    private final Executor       mExecutor;
+
+    /**
+     * Limits set by this prewarmer on a pool not managed by a {@link SharedViewPool}. Main thread only
+     */
+    private final SparseIntArray mLimits = new SparseIntArray();
+
+    private volatile boolean mCancelled;
+    private volatile int     mPrewarmedCount;
+    private volatile int     mSatisfiedCount;
+
+    public ViewPrewarmer(@NonNull BindingAdapter adapter, @NonNull RecyclerView recyclerView) {
+        this(adapter, recyclerView, DiffScheduler.getDefault());
+    }
+
+    /**
+     * @param executor where layouts are inflated, one view per task. Those tasks don't have priority on
+     *                 {@link DiffScheduler}, so a diff waits for at most one inflation per worker when using it
+     */
+    public ViewPrewarmer(@NonNull BindingAdapter adapter, @NonNull RecyclerView recyclerView, @NonNull Executor executor) {
+        mAdapter = Preconditions.checkNotNull(adapter, "adapter may not be null");
+        mRecyclerView = Preconditions.checkNotNull(recyclerView, "recyclerView may not be null");
+        mExecutor = Preconditions.checkNotNull(executor, "executor may not be null");
+    }
+
+    /**
+     * Schedules inflation of {@code count} holders of the given layout. The pool limit for the layout is raised so they
+     * fit along with the holders already pooled, never lowered. When the pool is a {@link SharedViewPool} the change
+     * goes through it. Otherwise this prewarmer only knows the limits it set itself, so a bigger limit set by the app
+     * should be set after this call.
+     */
+    @MainThread
+    @NonNull
+    public ViewPrewarmer prewarm(@LayoutRes final int layout, final int count) {
+        Preconditions.checkArgument(layout != View.NO_ID, "Unexpected layout resource");
+        Preconditions.checkArgument(count >= 0, "count should not be negative, but it's %s", count);
+        Preconditions.checkState(!mCancelled, "Prewarmer already cancelled");
+
+        final RecyclerView.RecycledViewPool pool = mRecyclerView.getRecycledViewPool();
+        raiseLimit(pool, layout, pool.getRecycledViewCount(layout) + count);
+        final LayoutInflater inflater = LayoutInflater.from(mRecyclerView.getContext());
+        for (int i = 0; i < count; i++) {
+            // Inflater of the context is used by main thread at the same time, and it's not thread safe
+            final LayoutInflater workerInflater = inflater.cloneInContext(mRecyclerView.getContext());
+            mExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    if (mCancelled) {
+                        return;
+                    }
+                    final View view = workerInflater.inflate(layout, mRecyclerView, false);
+                    MAIN_THREAD_HANDLER.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            addToPool(pool, layout, view);
+                        }
+                    });
+                }
+            });
+        }
+        return this;
+    }
+
+    /**
+     * Stops pending inflations. Holders already in the pool are kept there
+     */
+    public void cancel() {
+        mCancelled = true;
+    }
+
+    /**
+     * @return number of holders put in the pool so far
+     */
+    public int getPrewarmedCount() {
+        return mPrewarmedCount;
+    }
+
+    /**
+     * @return number of prewarmed holders that have been bound, each of them being a holder creation saved
+     */
+    public int getSatisfiedCount() {
+        return mSatisfiedCount;
+    }
+
+    private void raiseLimit(RecyclerView.RecycledViewPool pool, int layout, int limit) {
+        final SharedViewPool sharedViewPool = mAdapter.getSharedViewPool();
+        if (null != sharedViewPool && sharedViewPool.getPool() == pool) {
+            sharedViewPool.raiseLimit(layout, limit);
+        } else if (limit > mLimits.get(layout, DEFAULT_POOL_LIMIT)) {
+            mLimits.put(layout, limit);
+            pool.setMaxRecycledViews(layout, limit);
+        }
+    }
+
+    private void addToPool(RecyclerView.RecycledViewPool pool, int layout, View view) {
+        if (mCancelled) {
+            return;
+        }
+        final BindingHolder holder = mAdapter.createPrewarmedHolder(mRecyclerView, layout, view);
+        holder.setPrewarmer(this);
+        pool.putRecycledView(holder);
+        mPrewarmedCount++;
+        if (BindingAdapter.DEBUG) {
+            Timber.d("Prewarmed holder of type: 0x%s [%d in pool]", Integer.toHexString(layout), pool.getRecycledViewCount(layout));
+        }
+    }
+
+    @MainThread
+    void onHolderUsed() {
+        mSatisfiedCount++;
+    }
+}
@@ -0,0 +1,378 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters.internal;
+
+import com.google.common.base.Preconditions;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.RandomAccess;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Mutable list stored as a sequence of small chunks, able to take immutable snapshots in constant time.
+ * <p>
+ * A snapshot shares the chunks with the list. Every chunk is tagged with the edit token of the list that created it,
+ * and taking a snapshot renews the token, so chunks reachable from a snapshot are copied before being written again.
+ * Only the chunks touched after a snapshot are copied, the rest of the memory is shared among all versions.
+ * <p>
+ * Not thread safe. Snapshots are immutable and can be read from any thread.
+ */
+public final class ChunkedList<T> extends AbstractList<T> implements RandomAccess {
+    private static final int CHUNK_CAPACITY = 64;
+    private static final int NO_CHUNK       = -1;
+
+    private Chunk[] chunks = new Chunk[4];
+    /** Exclusive end index of each chunk */
+    private int[]   ends   = new int[4];
+    private int     chunkCount;
+    private int     size;
+    private int     lastChunk;
+
+    private Object  editToken = new Object();
+    /** Whether chunks and ends arrays are referenced by a snapshot */
+    private boolean rootShared;
+
+    private static final class Chunk {
+        final Object[] items;
+        final Object   owner;
+        int            size;
+
+        Chunk(Object owner) {
+            this.items = new Object[CHUNK_CAPACITY];
+            this.owner = owner;
+        }
+
+        Chunk(Chunk source, Object owner) {
+            this.items = source.items.clone();
+            this.size = source.size;
+            this.owner = owner;
+        }
+    }
+
+    /**
+     * @return immutable list with current contents, in constant time
+     */
+    @NonNull
+    public List<T> snapshot() {
+        rootShared = true;
+        editToken = new Object();
+        return new Snapshot<>(chunks, ends, chunkCount, size);
+    }
+
+    public static boolean isSnapshot(@NonNull List<?> list) {
+        return list instanceof Snapshot;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public T get(int index) {
+        Preconditions.checkElementIndex(index, size);
+        final int c = chunkOf(index);
+        return itemAt(chunks[c], index - startOf(ends, c));
+    }
+
+    @Override
+    public T set(int index, T element) {
+        Preconditions.checkElementIndex(index, size);
+        final int c = chunkOf(index);
+        final Chunk chunk = editableChunk(c);
+        final int offset = index - startOf(ends, c);
+        final T previous = itemAt(chunk, offset);
+        chunk.items[offset] = element;
+        return previous;
+    }
+
+    @Override
+    public void add(int index, T element) {
+        Preconditions.checkPositionIndex(index, size);
+        modCount++;
+        if (chunkCount == 0) {
+            insertChunk(0, new Chunk(editToken));
+        }
+
+        int c = index == size ? chunkCount - 1 : chunkOf(index);
+        final int firstChanged = c;
+        Chunk chunk = editableChunk(c);
+        int offset = index - startOf(ends, c);
+        if (chunk.size == CHUNK_CAPACITY) {
+            final int half = CHUNK_CAPACITY / 2;
+            final Chunk right = new Chunk(editToken);
+            System.arraycopy(chunk.items, half, right.items, 0, CHUNK_CAPACITY - half);
+            Arrays.fill(chunk.items, half, CHUNK_CAPACITY, null);
+            right.size = CHUNK_CAPACITY - half;
+            chunk.size = half;
+            insertChunk(c + 1, right);
+            if (offset > half) {
+                c++;
+                chunk = right;
+                offset -= half;
+            }
+        }
+        System.arraycopy(chunk.items, offset, chunk.items, offset + 1, chunk.size - offset);
+        chunk.items[offset] = element;
+        chunk.size++;
+        size++;
+        updateEnds(firstChanged);
+    }
+
+    @Override
+    public T remove(int index) {
+        Preconditions.checkElementIndex(index, size);
+        modCount++;
+        final int c = chunkOf(index);
+        final Chunk chunk = editableChunk(c);
+        final int offset = index - startOf(ends, c);
+        final T removed = itemAt(chunk, offset);
+        System.arraycopy(chunk.items, offset + 1, chunk.items, offset, chunk.size - offset - 1);
+        chunk.items[--chunk.size] = null;
+        size--;
+
+        if (chunk.size == 0) {
+            removeChunks(c, c + 1);
+        } else {
+            mergeWithNextIfSmall(c);
+        }
+        updateEnds(c);
+        return removed;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends T> collection) {
+        if (index != size) {
+            return super.addAll(index, collection);
+        }
+        Preconditions.checkPositionIndex(index, size);
+        final Object[] elements = collection.toArray();
+        if (elements.length == 0) {
+            return false;
+        }
+        modCount++;
+        int i = 0;
+        while (i < elements.length) {
+            final Chunk chunk;
+            if (chunkCount == 0 || chunks[chunkCount - 1].size == CHUNK_CAPACITY) {
+                chunk = new Chunk(editToken);
+                insertChunk(chunkCount, chunk);
+            } else {
+                chunk = editableChunk(chunkCount - 1);
+            }
+            final int count = Math.min(CHUNK_CAPACITY - chunk.size, elements.length - i);
+            System.arraycopy(elements, i, chunk.items, chunk.size, count);
+            chunk.size += count;
+            i += count;
+            size += count;
+            ends[chunkCount - 1] = size;
+        }
+        return true;
+    }
+
+    @Override
+    public boolean addAll(Collection<? extends T> collection) {
+        return addAll(size, collection);
+    }
+
+    @Override
+    public void clear() {
+        modCount++;
+        chunks = new Chunk[4];
+        ends = new int[4];
+        chunkCount = 0;
+        size = 0;
+        lastChunk = 0;
+        rootShared = false;
+    }
+
+    /**
+     * Drops the chunks inside the range at once and trims the ones at its boundaries, so cost depends on the number of
+     * chunks, not on the number of items removed
+     */
+    @Override
+    protected void removeRange(int fromIndex, int toIndex) {
+        if (fromIndex == 0 && toIndex == size) {
+            clear();
+            return;
+        }
+        if (fromIndex >= toIndex) {
+            return;
+        }
+        modCount++;
+        final int first = chunkOf(fromIndex);
+        int removedFrom = NO_CHUNK;
+        int removedTo = NO_CHUNK;
+        int chunkStart = startOf(ends, first);
+        for (int c = first; c < chunkCount && chunkStart < toIndex; c++) {
+            final int chunkEnd = ends[c];
+            final int from = Math.max(fromIndex, chunkStart) - chunkStart;
+            final int to = Math.min(toIndex, chunkEnd) - chunkStart;
+            if (from == 0 && to == chunkEnd - chunkStart) {
+                // Only first and last chunks may be partially removed, so whole ones are contiguous
+                if (removedFrom == NO_CHUNK) {
+                    removedFrom = c;
+                }
+                removedTo = c + 1;
+            } else {
+                final Chunk chunk = editableChunk(c);
+                System.arraycopy(chunk.items, to, chunk.items, from, chunk.size - to);
+                Arrays.fill(chunk.items, chunk.size - (to - from), chunk.size, null);
+                chunk.size -= to - from;
+            }
+            chunkStart = chunkEnd;
+        }
+        size -= toIndex - fromIndex;
+        if (removedFrom != NO_CHUNK) {
+            removeChunks(removedFrom, removedTo);
+        }
+        if (first < chunkCount) {
+            mergeWithNextIfSmall(first);
+        }
+        updateEnds(first);
+    }
+
+    private int chunkOf(int index) {
+        final int cached = lastChunk;
+        if (cached < chunkCount && index < ends[cached] && index >= startOf(ends, cached)) {
+            return cached;
+        }
+        return lastChunk = findChunk(ends, chunkCount, index);
+    }
+
+    private Chunk editableChunk(int c) {
+        ensureRootEditable();
+        Chunk chunk = chunks[c];
+        if (chunk.owner != editToken) {
+            chunk = new Chunk(chunk, editToken);
+            chunks[c] = chunk;
+        }
+        return chunk;
+    }
+
+    private void ensureRootEditable() {
+        if (rootShared) {
+            chunks = chunks.clone();
+            ends = ends.clone();
+            rootShared = false;
+        }
+    }
+
+    private void insertChunk(int position, Chunk chunk) {
+        ensureRootEditable();
+        if (chunkCount == chunks.length) {
+            chunks = Arrays.copyOf(chunks, chunkCount * 2);
+            ends = Arrays.copyOf(ends, chunkCount * 2);
+        }
+        System.arraycopy(chunks, position, chunks, position + 1, chunkCount - position);
+        System.arraycopy(ends, position, ends, position + 1, chunkCount - position);
+        chunks[position] = chunk;
+        chunkCount++;
+    }
+
+    /**
+     * Removes chunks {@code [from, to)}, ends of the following ones must be updated afterwards
+     */
+    private void removeChunks(int from, int to) {
+        ensureRootEditable();
+        final int count = to - from;
+        System.arraycopy(chunks, to, chunks, from, chunkCount - to);
+        System.arraycopy(ends, to, ends, from, chunkCount - to);
+        Arrays.fill(chunks, chunkCount - count, chunkCount, null);
+        chunkCount -= count;
+    }
+
+    /**
+     * Merges given chunk with next one if it's almost empty and both fit in one, to keep chunks from fragmenting
+     */
+    private void mergeWithNextIfSmall(int c) {
+        if (chunks[c].size < CHUNK_CAPACITY / 4 && c + 1 < chunkCount && chunks[c].size + chunks[c + 1].size <= CHUNK_CAPACITY) {
+            final Chunk chunk = editableChunk(c);
+            final Chunk next = chunks[c + 1];
+            System.arraycopy(next.items, 0, chunk.items, chunk.size, next.size);
+            chunk.size += next.size;
+            removeChunks(c + 1, c + 2);
+        }
+    }
+
+    private void updateEnds(int fromChunk) {
+        int end = startOf(ends, fromChunk);
+        for (int c = fromChunk; c < chunkCount; c++) {
+            end += chunks[c].size;
+            ends[c] = end;
+        }
+    }
+
+    private static int startOf(int[] ends, int chunk) {
+        return chunk == 0 ? 0 : ends[chunk - 1];
+    }
+
+    private static int findChunk(int[] ends, int chunkCount, int index) {
+        int lo = 0;
+        int hi = chunkCount - 1;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (ends[mid] <= index) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T itemAt(Chunk chunk, int offset) {
+        return (T) chunk.items[offset];
+    }
+
+    private static final class Snapshot<T> extends AbstractList<T> implements RandomAccess {
+        private final Chunk[] chunks;
+        private final int[]   ends;
+        private final int     chunkCount;
+        private final int     size;
+        private int           lastChunk;
+
+        Snapshot(Chunk[] chunks, int[] ends, int chunkCount, int size) {
+            this.chunks = chunks;
+            this.ends = ends;
+            this.chunkCount = chunkCount;
+            this.size = size;
+        }
+
+        @Override
+        public T get(int index) {
+            Preconditions.checkElementIndex(index, size);
+            // Racy cache of the last chunk read, harmless as it's validated before use
+            int c = lastChunk;
+            if (index >= ends[c] || index < startOf(ends, c)) {
+                c = findChunk(ends, chunkCount, index);
+                lastChunk = c;
+            }
+            return itemAt(chunks[c], index - startOf(ends, c));
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
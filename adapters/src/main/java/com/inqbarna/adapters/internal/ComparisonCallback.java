@@ -0,0 +1,93 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters.internal;
+
+import com.google.common.base.Preconditions;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.DiffUtil;
+
+/**
+ * {@link DiffUtil.Callback} comparing two lists through an {@link Items} implementation. It's called a huge number of
+ * times for big lists, so nothing here allocates: null checks use primitive message arguments, which are only
+ * formatted on failure.
+ * <p>
+ * Content comparisons are recorded, so the flags returned by {@link #getContentChanged()} end up telling which of the
+ * matched items changed after the diff is computed.
+ */
+public final class ComparisonCallback<T> extends DiffUtil.Callback {
+
+    public interface Items<T> extends EditScript.PayloadSource {
+        boolean areSameEntity(@NonNull T oldItem, @NonNull T newItem);
+
+        boolean areContentsTheSame(int oldPosition, int newPosition);
+    }
+
+    private final List<? extends T>  oldList;
+    private final List<? extends T>  newList;
+    private final Items<? super T>   items;
+    private final boolean[]          contentChanged;
+
+    public ComparisonCallback(@NonNull List<? extends T> oldList, @NonNull List<? extends T> newList, @NonNull Items<? super T> items) {
+        this.oldList = oldList;
+        this.newList = newList;
+        this.items = items;
+        contentChanged = new boolean[newList.size()];
+    }
+
+    /**
+     * @return for each position of the new list, whether it was found with different contents
+     */
+    @NonNull
+    public boolean[] getContentChanged() {
+        return contentChanged;
+    }
+
+    @Override
+    public int getOldListSize() {
+        return oldList.size();
+    }
+
+    @Override
+    public int getNewListSize() {
+        return newList.size();
+    }
+
+    @Override
+    public boolean areItemsTheSame(int oldItemPosition, int newItemPosition) {
+        final T first = Preconditions.checkNotNull(oldList.get(oldItemPosition), "First element is null, comparing positions %s to %s", oldItemPosition, newItemPosition);
+        final T second = Preconditions.checkNotNull(newList.get(newItemPosition), "Second element is null, comparing positions %s to %s", oldItemPosition, newItemPosition);
+        return items.areSameEntity(first, second);
+    }
+
+    @Override
+    public boolean areContentsTheSame(int oldItemPosition, int newItemPosition) {
+        final boolean same = items.areContentsTheSame(oldItemPosition, newItemPosition);
+        // DiffUtil only compares contents of the pairs it matches, so this ends up as the change flag
+        contentChanged[newItemPosition] = !same;
+        return same;
+    }
+
+    @Nullable
+    @Override
+    public Object getChangePayload(int oldItemPosition, int newItemPosition) {
+        return items.getChangePayload(newItemPosition, 1);
+    }
+}
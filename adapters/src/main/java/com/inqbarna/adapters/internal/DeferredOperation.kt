@@ -1,32 +0,0 @@
-/* 
- * Copyright 2014 InQBarna Kenkyuu Jo SL 
- * 
- * Licensed under the Apache License, Version 2.0 (the "License"); 
- * you may not use this file except in compliance with the License. 
- * You may obtain a copy of the License at 
- * 
- *     http://www.apache.org/licenses/LICENSE-2.0 
- * 
- * Unless required by applicable law or agreed to in writing, software 
- * distributed under the License is distributed on an "AS IS" BASIS, 
- * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
- * See the License for the specific language governing permissions and 
- * limitations under the License. 
- */ 
-
-package com.inqbarna.adapters.internal
-
-/**
- * @author David García (david.garcia@inqbarna.com)
- * @version 1.0 06/04/2018
- */
-class DeferredOperation<out T> @JvmOverloads constructor(val type: Type, val data: T? = null) {
-
-    override fun toString(): String {
-        return "$type{data=$data}"
-    }
-
-    enum class Type {
-        Keep, Placeholder, New
-    }
-}
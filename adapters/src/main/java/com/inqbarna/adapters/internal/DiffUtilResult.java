@@ -0,0 +1,60 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.inqbarna.adapters.internal;
+
+import com.inqbarna.adapters.DiffResult;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * {@link DiffResult} backed by {@link DiffUtil} (Myers algorithm).
+ */
+public final class DiffUtilResult implements DiffResult {
+    private final DiffUtil.DiffResult diffResult;
+    private final boolean[]           contentChanged;
+
+    /**
+     * @param contentChanged for each position of the new list, result of the contents comparison done by
+     *                       {@link DiffUtil} on the pair it matched
+     */
+    public DiffUtilResult(@NonNull DiffUtil.DiffResult diffResult, @NonNull boolean[] contentChanged) {
+        this.diffResult = diffResult;
+        this.contentChanged = contentChanged;
+    }
+
+    @Override
+    public void dispatchUpdatesTo(@NonNull ListUpdateCallback callback) {
+        diffResult.dispatchUpdatesTo(callback);
+    }
+
+    @Override
+    public int convertNewPositionToOld(int newPosition) {
+        return diffResult.convertNewPositionToOld(newPosition);
+    }
+
+    @Override
+    public boolean isContentChanged(int newPosition) {
+        return contentChanged[newPosition];
+    }
+
+    @Override
+    public String toString() {
+        return diffResult.toString();
+    }
+}
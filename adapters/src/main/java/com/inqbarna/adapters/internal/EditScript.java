@@ -0,0 +1,335 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.inqbarna.adapters.internal;
+
+import com.inqbarna.adapters.DiffResult;
+
+import java.util.Arrays;
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Sequence of list operations that transforms an old list into a new one, built from a position mapping between both
+ * lists. Operations are recorded in a primitive array when building (off the main thread) and replayed later on any
+ * {@link ListUpdateCallback}, with positions expressed the same way {@code DiffUtil} reports them: each one is relative
+ * to the list as left by the previous operations.
+ * <p>
+ * Order of operations is: removals (from the end), moves of the items that are not part of the longest run already in
+ * order, insertions (from the start) and finally content changes at their final positions.
+ */
+public final class EditScript {
+    public static final int NO_POSITION = DiffResult.NO_POSITION;
+
+    static final int OP_REMOVE = 0;
+    static final int OP_MOVE   = 1;
+    static final int OP_INSERT = 2;
+    static final int OP_CHANGE = 3;
+
+    private static final int OP_SIZE = 3;
+
+    /**
+     * Provides the payload of changed ranges, which are always reported at their position in the new list
+     */
+    public interface PayloadSource {
+        @Nullable
+        Object getChangePayload(int newPosition, int count);
+    }
+
+    private int[] ops;
+    private int   opsLength;
+
+    private EditScript(int expectedOps) {
+        ops = new int[Math.max(expectedOps, 4) * OP_SIZE];
+    }
+
+    /**
+     * @param oldSize  size of the original list
+     * @param newToOld for each position in the new list, the position of the same entity at the old list, or
+     *                 {@link #NO_POSITION} if it is a new item. Kept positions must be unique
+     * @param changed  for each position in the new list, whether a kept item has changed its contents
+     */
+    @NonNull
+    public static EditScript fromMapping(int oldSize, @NonNull int[] newToOld, @NonNull boolean[] changed) {
+        final int newSize = newToOld.length;
+        final EditScript script = new EditScript(16);
+
+        final int[] oldToNew = new int[oldSize];
+        Arrays.fill(oldToNew, NO_POSITION);
+        int keptCount = 0;
+        for (int j = 0; j < newSize; j++) {
+            final int oldPos = newToOld[j];
+            if (oldPos != NO_POSITION) {
+                oldToNew[oldPos] = j;
+                keptCount++;
+            }
+        }
+
+        // Removals, walking backwards so earlier positions are still valid when dispatched
+        int runEnd = NO_POSITION;
+        for (int i = oldSize - 1; i >= 0; i--) {
+            if (oldToNew[i] == NO_POSITION) {
+                if (runEnd == NO_POSITION) {
+                    runEnd = i;
+                }
+            } else if (runEnd != NO_POSITION) {
+                script.add(OP_REMOVE, i + 1, runEnd - i);
+                runEnd = NO_POSITION;
+            }
+        }
+        if (runEnd != NO_POSITION) {
+            script.add(OP_REMOVE, 0, runEnd + 1);
+        }
+
+        // Kept items, in old order (slot), and their order in the new list (rank)
+        final int[] rankOfNew = new int[newSize];
+        int rank = 0;
+        for (int j = 0; j < newSize; j++) {
+            rankOfNew[j] = newToOld[j] == NO_POSITION ? NO_POSITION : rank++;
+        }
+        final int[] keptRank = new int[keptCount];
+        final int[] slotOfRank = new int[keptCount];
+        int slot = 0;
+        for (int i = 0; i < oldSize; i++) {
+            if (oldToNew[i] != NO_POSITION) {
+                final int r = rankOfNew[oldToNew[i]];
+                keptRank[slot] = r;
+                slotOfRank[r] = slot;
+                slot++;
+            }
+        }
+
+        script.addMoves(keptRank, slotOfRank);
+
+        // Insertions, walking forward: every position before the current one is already in its final place
+        script.addRuns(OP_INSERT, newToOld, null);
+
+        // Changes at their final position
+        script.addRuns(OP_CHANGE, newToOld, changed);
+
+        return script;
+    }
+
+    /**
+     * Builds the script equivalent to an already computed result, so it can be replayed operation by operation
+     */
+    @NonNull
+    public static EditScript fromResult(@NonNull DiffResult result, int oldSize, int newSize) {
+        final int[] newToOld = new int[newSize];
+        final boolean[] changed = new boolean[newSize];
+        for (int j = 0; j < newSize; j++) {
+            newToOld[j] = result.convertNewPositionToOld(j);
+            changed[j] = newToOld[j] != NO_POSITION && result.isContentChanged(j);
+        }
+        return fromMapping(oldSize, newToOld, changed);
+    }
+
+    private void addMoves(int[] keptRank, int[] slotOfRank) {
+        final int count = keptRank.length;
+        final boolean[] stable = longestIncreasingRun(keptRank);
+
+        // Items that are not stable are taken out of their slot and placed right after their predecessor in the new
+        // order. Those placed items form chains after a stable item (or at the list head), so the current position of
+        // anything can be resolved with a prefix sum over slots, where each slot weights its own item plus its chain.
+        final FenwickTree weights = new FenwickTree(count);
+        for (int k = 0; k < count; k++) {
+            weights.add(k, 1);
+        }
+        int headChain = 0;
+        int anchor = NO_POSITION;
+        for (int r = 0; r < count; r++) {
+            final int k = slotOfRank[r];
+            if (stable[k]) {
+                anchor = k;
+                continue;
+            }
+
+            final int from = headChain + weights.prefix(k);
+            final int chainEnd;
+            if (anchor == NO_POSITION) {
+                chainEnd = headChain - 1;
+            } else {
+                chainEnd = headChain + weights.prefix(anchor + 1) - 1;
+            }
+            final int to = from > chainEnd ? chainEnd + 1 : chainEnd;
+            if (from != to) {
+                add(OP_MOVE, from, to);
+            }
+
+            weights.add(k, -1);
+            if (anchor == NO_POSITION) {
+                headChain++;
+            } else {
+                weights.add(anchor, 1);
+            }
+        }
+    }
+
+    private void addRuns(int op, int[] newToOld, boolean[] changed) {
+        int runStart = NO_POSITION;
+        final int size = newToOld.length;
+        for (int j = 0; j <= size; j++) {
+            final boolean inRun;
+            if (j == size) {
+                inRun = false;
+            } else if (op == OP_INSERT) {
+                inRun = newToOld[j] == NO_POSITION;
+            } else {
+                inRun = newToOld[j] != NO_POSITION && changed[j];
+            }
+
+            if (inRun) {
+                if (runStart == NO_POSITION) {
+                    runStart = j;
+                }
+            } else if (runStart != NO_POSITION) {
+                add(op, runStart, j - runStart);
+                runStart = NO_POSITION;
+            }
+        }
+    }
+
+    /**
+     * Marks the elements that belong to one longest strictly increasing subsequence of the given values.
+     */
+    static boolean[] longestIncreasingRun(int[] values) {
+        final int count = values.length;
+        final boolean[] result = new boolean[count];
+        if (count == 0) {
+            return result;
+        }
+        final int[] tails = new int[count];
+        final int[] previous = new int[count];
+        int length = 0;
+        for (int k = 0; k < count; k++) {
+            final int value = values[k];
+            int lo = 0;
+            int hi = length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (values[tails[mid]] < value) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            previous[k] = lo > 0 ? tails[lo - 1] : NO_POSITION;
+            tails[lo] = k;
+            if (lo == length) {
+                length++;
+            }
+        }
+        for (int k = tails[length - 1]; k != NO_POSITION; k = previous[k]) {
+            result[k] = true;
+        }
+        return result;
+    }
+
+    private void add(int op, int first, int second) {
+        if (opsLength + OP_SIZE > ops.length) {
+            ops = Arrays.copyOf(ops, ops.length * 2);
+        }
+        ops[opsLength++] = op;
+        ops[opsLength++] = first;
+        ops[opsLength++] = second;
+    }
+
+    /**
+     * @return payload source that reports the affected items of {@code newList}, a single item when only one position
+     * changed or a {@link List} otherwise
+     */
+    @NonNull
+    public static PayloadSource itemsOf(@NonNull final List<?> newList) {
+        return new PayloadSource() {
+            @Override
+            public Object getChangePayload(int newPosition, int count) {
+                return count == 1 ? newList.get(newPosition) : newList.subList(newPosition, newPosition + count);
+            }
+        };
+    }
+
+    /**
+     * Replays the script on the given callback
+     */
+    public void dispatchUpdatesTo(@NonNull ListUpdateCallback callback, @NonNull PayloadSource payloads) {
+        for (int index = 0, count = size(); index < count; index++) {
+            dispatchOperation(index, callback, payloads);
+        }
+    }
+
+    /**
+     * @return number of operations in this script
+     */
+    public int size() {
+        return opsLength / OP_SIZE;
+    }
+
+    /**
+     * Replays a single operation, operations must be dispatched in order
+     *
+     * @see #dispatchUpdatesTo(ListUpdateCallback, PayloadSource)
+     */
+    public void dispatchOperation(int index, @NonNull ListUpdateCallback callback, @NonNull PayloadSource payloads) {
+        final int i = index * OP_SIZE;
+        final int first = ops[i + 1];
+        final int second = ops[i + 2];
+        switch (ops[i]) {
+            case OP_REMOVE:
+                callback.onRemoved(first, second);
+                break;
+            case OP_MOVE:
+                callback.onMoved(first, second);
+                break;
+            case OP_INSERT:
+                callback.onInserted(first, second);
+                break;
+            case OP_CHANGE:
+                callback.onChanged(first, second, payloads.getChangePayload(first, second));
+                break;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "EditScript{ops=" + size() + "}";
+    }
+
+    private static final class FenwickTree {
+        private final int[] tree;
+
+        FenwickTree(int size) {
+            tree = new int[size + 1];
+        }
+
+        void add(int index, int delta) {
+            for (int i = index + 1; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        /** Sum of the weights at indices lower than {@code index} */
+        int prefix(int index) {
+            int sum = 0;
+            for (int i = index; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+    }
+}
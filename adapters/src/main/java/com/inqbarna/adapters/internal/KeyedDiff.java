@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.inqbarna.adapters.internal;
+
+import com.inqbarna.adapters.DiffResult;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Diff between two lists whose items expose a stable key. Matching is done through a hash map, so the cost is linear
+ * on the size of both lists for matching and content comparison, plus {@code O(k log k)} on the number of kept items to
+ * find the minimum set of moves.
+ * <p>
+ * Keys are expected to be unique within each list. If they are not, only the first occurrence of a key at the new list
+ * is matched and any other item with the same key is reported as removed (old list) or inserted (new list).
+ */
+public final class KeyedDiff<T> implements DiffResult {
+
+    public interface Callback<T> extends EditScript.PayloadSource {
+        Object keyOf(T item);
+        boolean areContentsTheSame(int oldPosition, int newPosition);
+    }
+
+    private final EditScript               script;
+    private final EditScript.PayloadSource payloads;
+    private final int[]                    newToOld;
+    private final boolean[]                changed;
+
+    private KeyedDiff(EditScript script, EditScript.PayloadSource payloads, int[] newToOld, boolean[] changed) {
+        this.script = script;
+        this.payloads = payloads;
+        this.newToOld = newToOld;
+        this.changed = changed;
+    }
+
+    @NonNull
+    public static <T> KeyedDiff<T> calculate(@NonNull List<? extends T> oldList, @NonNull List<? extends T> newList, @NonNull Callback<? super T> callback) {
+        final int oldSize = oldList.size();
+        final int newSize = newList.size();
+
+        final Map<Object, Integer> newPositions = new HashMap<>(Math.max(16, (int) (newSize / 0.75f) + 1));
+        for (int j = 0; j < newSize; j++) {
+            final Object key = callback.keyOf(newList.get(j));
+            if (!newPositions.containsKey(key)) {
+                newPositions.put(key, j);
+            }
+        }
+
+        final int[] newToOld = new int[newSize];
+        Arrays.fill(newToOld, EditScript.NO_POSITION);
+        final boolean[] changed = new boolean[newSize];
+        for (int i = 0; i < oldSize; i++) {
+            final Integer newPosition = newPositions.get(callback.keyOf(oldList.get(i)));
+            if (null != newPosition) {
+                final int j = newPosition;
+                if (newToOld[j] == EditScript.NO_POSITION) {
+                    newToOld[j] = i;
+                    changed[j] = !callback.areContentsTheSame(i, j);
+                }
+            }
+        }
+
+        return new KeyedDiff<>(EditScript.fromMapping(oldSize, newToOld, changed), callback, newToOld, changed);
+    }
+
+    @Override
+    public void dispatchUpdatesTo(@NonNull ListUpdateCallback callback) {
+        script.dispatchUpdatesTo(callback, payloads);
+    }
+
+    @Override
+    public int convertNewPositionToOld(int newPosition) {
+        return newToOld[newPosition];
+    }
+
+    @Override
+    public boolean isContentChanged(int newPosition) {
+        return changed[newPosition];
+    }
+
+    @Override
+    public String toString() {
+        return "KeyedDiff{" + script + "}";
+    }
+}
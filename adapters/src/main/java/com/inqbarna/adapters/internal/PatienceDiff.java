@@ -0,0 +1,174 @@
+/*
+ * Copyright 2014 InQBarna Kenkyuu Jo SL
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.inqbarna.adapters.internal;
+
+import com.google.common.base.Objects;
+import com.inqbarna.adapters.DiffResult;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Patience diff between two lists whose items expose a key. Keys appearing exactly once on both lists are used as
+ * anchors, keeping the longest run of them that is in the same order on both lists, and the ranges between anchors are
+ * matched again the same way. Equal keys at both ends of each range are matched directly.
+ * <p>
+ * Unlike {@link KeyedDiff}, it never reports moves: items out of order are removed and inserted again. On the other
+ * hand it copes well with repeated keys, which are matched by their surroundings instead of by first occurrence.
+ */
+public final class PatienceDiff<T> implements DiffResult {
+
+    private final EditScript               script;
+    private final EditScript.PayloadSource payloads;
+    private final int[]                    newToOld;
+    private final boolean[]                changed;
+
+    private PatienceDiff(EditScript script, EditScript.PayloadSource payloads, int[] newToOld, boolean[] changed) {
+        this.script = script;
+        this.payloads = payloads;
+        this.newToOld = newToOld;
+        this.changed = changed;
+    }
+
+    @NonNull
+    public static <T> PatienceDiff<T> calculate(@NonNull List<? extends T> oldList, @NonNull List<? extends T> newList, @NonNull KeyedDiff.Callback<? super T> callback) {
+        final int oldSize = oldList.size();
+        final int newSize = newList.size();
+        final Object[] oldKeys = new Object[oldSize];
+        for (int i = 0; i < oldSize; i++) {
+            oldKeys[i] = callback.keyOf(oldList.get(i));
+        }
+        final Object[] newKeys = new Object[newSize];
+        for (int j = 0; j < newSize; j++) {
+            newKeys[j] = callback.keyOf(newList.get(j));
+        }
+
+        final int[] newToOld = new int[newSize];
+        Arrays.fill(newToOld, EditScript.NO_POSITION);
+
+        // Ranges still to match, as {oldStart, oldEnd, newStart, newEnd}
+        final Deque<int[]> pending = new ArrayDeque<>();
+        pending.push(new int[]{0, oldSize, 0, newSize});
+        while (!pending.isEmpty()) {
+            final int[] range = pending.pop();
+            int oldStart = range[0];
+            int oldEnd = range[1];
+            int newStart = range[2];
+            int newEnd = range[3];
+            while (oldStart < oldEnd && newStart < newEnd && Objects.equal(oldKeys[oldStart], newKeys[newStart])) {
+                newToOld[newStart++] = oldStart++;
+            }
+            while (oldStart < oldEnd && newStart < newEnd && Objects.equal(oldKeys[oldEnd - 1], newKeys[newEnd - 1])) {
+                newToOld[--newEnd] = --oldEnd;
+            }
+            if (oldStart == oldEnd || newStart == newEnd) {
+                continue;
+            }
+
+            final Map<Object, Occurrence> occurrences = new HashMap<>();
+            for (int i = oldStart; i < oldEnd; i++) {
+                Occurrence occurrence = occurrences.get(oldKeys[i]);
+                if (null == occurrence) {
+                    occurrence = new Occurrence();
+                    occurrences.put(oldKeys[i], occurrence);
+                }
+                occurrence.oldCount++;
+                occurrence.oldPosition = i;
+            }
+            for (int j = newStart; j < newEnd; j++) {
+                final Occurrence occurrence = occurrences.get(newKeys[j]);
+                if (null != occurrence) {
+                    occurrence.newCount++;
+                    occurrence.newPosition = j;
+                }
+            }
+
+            // Unique keys in new order, anchors are the longest run of them also in old order
+            final int[] candidateOld = new int[Math.min(oldEnd - oldStart, newEnd - newStart)];
+            final int[] candidateNew = new int[candidateOld.length];
+            int candidates = 0;
+            for (int j = newStart; j < newEnd; j++) {
+                final Occurrence occurrence = occurrences.get(newKeys[j]);
+                if (null != occurrence && occurrence.oldCount == 1 && occurrence.newCount == 1) {
+                    candidateOld[candidates] = occurrence.oldPosition;
+                    candidateNew[candidates] = j;
+                    candidates++;
+                }
+            }
+            if (candidates == 0) {
+                // Nothing left to anchor on, whatever remains is removed and inserted
+                continue;
+            }
+
+            final boolean[] anchors = EditScript.longestIncreasingRun(Arrays.copyOf(candidateOld, candidates));
+            int previousOld = oldStart;
+            int previousNew = newStart;
+            for (int k = 0; k < candidates; k++) {
+                if (anchors[k]) {
+                    newToOld[candidateNew[k]] = candidateOld[k];
+                    pending.push(new int[]{previousOld, candidateOld[k], previousNew, candidateNew[k]});
+                    previousOld = candidateOld[k] + 1;
+                    previousNew = candidateNew[k] + 1;
+                }
+            }
+            pending.push(new int[]{previousOld, oldEnd, previousNew, newEnd});
+        }
+
+        final boolean[] changed = new boolean[newSize];
+        for (int j = 0; j < newSize; j++) {
+            if (newToOld[j] != EditScript.NO_POSITION) {
+                changed[j] = !callback.areContentsTheSame(newToOld[j], j);
+            }
+        }
+
+        return new PatienceDiff<>(EditScript.fromMapping(oldSize, newToOld, changed), callback, newToOld, changed);
+    }
+
+    @Override
+    public void dispatchUpdatesTo(@NonNull ListUpdateCallback callback) {
+        script.dispatchUpdatesTo(callback, payloads);
+    }
+
+    @Override
+    public int convertNewPositionToOld(int newPosition) {
+        return newToOld[newPosition];
+    }
+
+    @Override
+    public boolean isContentChanged(int newPosition) {
+        return changed[newPosition];
+    }
+
+    @Override
+    public String toString() {
+        return "PatienceDiff{ops=" + script.size() + "}";
+    }
+
+    private static final class Occurrence {
+        int oldCount;
+        int oldPosition;
+        int newCount;
+        int newPosition;
+    }
+}
@@ -0,0 +1,118 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters.internal;
+
+import com.inqbarna.adapters.DiffResult;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Applies a {@link DiffResult} on the data of an adapter in place, replaying the {@link EditScript} built along with
+ * it: only removed, moved, inserted and changed ranges are touched, kept items stay where they are. Kept items with
+ * same contents preserve their current instance, so only the items that actually changed are replaced.
+ * <p>
+ * Only data is modified here, notifications are dispatched afterwards from the {@link DiffResult}.
+ */
+public final class ResultApplier {
+
+    public interface ItemCallback<T> {
+        /**
+         * Item is leaving the data, either removed or replaced by a changed one
+         */
+        void onRemovingElement(T item);
+
+        /**
+         * Item of the target list that is not used, because current one has same contents
+         */
+        void releaseItemResources(T item);
+    }
+
+    private static final EditScript.PayloadSource NO_PAYLOADS = new EditScript.PayloadSource() {
+        @Override
+        public Object getChangePayload(int newPosition, int count) {
+            return null;
+        }
+    };
+
+    private ResultApplier() {
+    }
+
+    /**
+     * @param script script of the result, as built by {@link EditScript#fromResult(DiffResult, int, int)}
+     */
+    public static <T> void apply(@NonNull List<T> data, @NonNull EditScript script, @NonNull DiffResult diffResult,
+                                 @NonNull List<? extends T> targetList, @NonNull ItemCallback<T> callback) {
+        script.dispatchUpdatesTo(editorOf(data, targetList, callback), NO_PAYLOADS);
+        releaseUnchangedTargets(data, diffResult, targetList, callback);
+    }
+
+    /**
+     * @return callback applying each operation it gets on given data, taking inserted and changed items from target
+     * list. Positions must be reported as {@link EditScript} does, changes at their final position
+     */
+    @NonNull
+    public static <T> ListUpdateCallback editorOf(@NonNull final List<T> data, @NonNull final List<? extends T> targetList, @NonNull final ItemCallback<T> callback) {
+        return new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                data.addAll(position, targetList.subList(position, position + count));
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                final List<T> removed = data.subList(position, position + count);
+                for (int i = 0; i < count; i++) {
+                    callback.onRemovingElement(removed.get(i));
+                }
+                removed.clear();
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                data.add(toPosition, data.remove(fromPosition));
+            }
+
+            @Override
+            public void onChanged(int position, int count, Object payload) {
+                for (int i = position; i < position + count; i++) {
+                    final T targetItem = targetList.get(i);
+                    final T previous = data.set(i, targetItem);
+                    // Intentional use of equality, we wan't to check if it's same instance
+                    if (previous != targetItem) {
+                        callback.onRemovingElement(previous);
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Once data matches target list, releases the target items that were not used because current one has same
+     * contents
+     */
+    public static <T> void releaseUnchangedTargets(@NonNull List<T> data, @NonNull DiffResult diffResult, @NonNull List<? extends T> targetList, @NonNull ItemCallback<T> callback) {
+        for (int i = 0, sz = targetList.size(); i < sz; i++) {
+            final T targetItem = targetList.get(i);
+            if (data.get(i) != targetItem && diffResult.convertNewPositionToOld(i) != DiffResult.NO_POSITION && !diffResult.isContentChanged(i)) {
+                callback.releaseItemResources(targetItem);
+            }
+        }
+    }
+}
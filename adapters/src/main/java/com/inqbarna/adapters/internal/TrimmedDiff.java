@@ -0,0 +1,167 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters.internal;
+
+import com.inqbarna.adapters.DiffResult;
+
+import java.util.List;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * {@link DiffResult} of two lists sharing a common prefix and suffix, where only the window in between was diffed.
+ * Positions of the window result are shifted back by the prefix length. When one of the windows is empty nothing needs
+ * to be diffed at all: the change is a single range insertion or removal.
+ */
+public final class TrimmedDiff implements DiffResult {
+    private final int        oldSize;
+    private final int        newSize;
+    private final int        prefix;
+    private final int        suffix;
+    private final DiffResult window;
+
+    private TrimmedDiff(int oldSize, int newSize, int prefix, int suffix, @Nullable DiffResult window) {
+        this.oldSize = oldSize;
+        this.newSize = newSize;
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.window = window;
+    }
+
+    /**
+     * @return number of leading items that are the same entity with same contents on both lists
+     */
+    public static <T> int commonPrefix(@NonNull List<? extends T> oldList, @NonNull List<? extends T> newList, @NonNull ComparisonCallback.Items<? super T> items) {
+        final int max = Math.min(oldList.size(), newList.size());
+        int prefix = 0;
+        while (prefix < max && isSame(oldList, newList, items, prefix, prefix)) {
+            prefix++;
+        }
+        return prefix;
+    }
+
+    /**
+     * @return number of trailing items that are the same entity with same contents on both lists, not overlapping with
+     * given prefix
+     */
+    public static <T> int commonSuffix(@NonNull List<? extends T> oldList, @NonNull List<? extends T> newList, int prefix, @NonNull ComparisonCallback.Items<? super T> items) {
+        final int oldSize = oldList.size();
+        final int newSize = newList.size();
+        final int max = Math.min(oldSize, newSize) - prefix;
+        int suffix = 0;
+        while (suffix < max && isSame(oldList, newList, items, oldSize - 1 - suffix, newSize - 1 - suffix)) {
+            suffix++;
+        }
+        return suffix;
+    }
+
+    private static <T> boolean isSame(List<? extends T> oldList, List<? extends T> newList, ComparisonCallback.Items<? super T> items, int oldPosition, int newPosition) {
+        final T oldItem = oldList.get(oldPosition);
+        final T newItem = newList.get(newPosition);
+        return null != oldItem && null != newItem && items.areSameEntity(oldItem, newItem) && items.areContentsTheSame(oldPosition, newPosition);
+    }
+
+    /**
+     * @return whether there's something to diff between prefix and suffix on both lists. If not, the result can be
+     * built without a window diff
+     */
+    public static boolean needsWindowDiff(int oldSize, int newSize, int prefix, int suffix) {
+        return oldSize - prefix - suffix > 0 && newSize - prefix - suffix > 0;
+    }
+
+    @NonNull
+    public static TrimmedDiff withoutWindow(int oldSize, int newSize, int prefix, int suffix) {
+        return new TrimmedDiff(oldSize, newSize, prefix, suffix, null);
+    }
+
+    /**
+     * @param window result of diffing old items {@code [prefix, oldSize - suffix)} against new items
+     *               {@code [prefix, newSize - suffix)}, with positions relative to those windows
+     */
+    @NonNull
+    public static TrimmedDiff withWindow(int oldSize, int newSize, int prefix, int suffix, @NonNull DiffResult window) {
+        return new TrimmedDiff(oldSize, newSize, prefix, suffix, window);
+    }
+
+    @Override
+    public void dispatchUpdatesTo(@NonNull final ListUpdateCallback callback) {
+        if (null == window) {
+            final int removed = oldSize - prefix - suffix;
+            final int inserted = newSize - prefix - suffix;
+            if (removed > 0) {
+                callback.onRemoved(prefix, removed);
+            }
+            if (inserted > 0) {
+                callback.onInserted(prefix, inserted);
+            }
+            return;
+        }
+
+        // Prefix is untouched, so every position reported by the window diff is just shifted by it
+        window.dispatchUpdatesTo(new ListUpdateCallback() {
+            @Override
+            public void onInserted(int position, int count) {
+                callback.onInserted(position + prefix, count);
+            }
+
+            @Override
+            public void onRemoved(int position, int count) {
+                callback.onRemoved(position + prefix, count);
+            }
+
+            @Override
+            public void onMoved(int fromPosition, int toPosition) {
+                callback.onMoved(fromPosition + prefix, toPosition + prefix);
+            }
+
+            @Override
+            public void onChanged(int position, int count, @Nullable Object payload) {
+                callback.onChanged(position + prefix, count, payload);
+            }
+        });
+    }
+
+    @Override
+    public int convertNewPositionToOld(int newPosition) {
+        if (newPosition < prefix) {
+            return newPosition;
+        }
+        if (newPosition >= newSize - suffix) {
+            return newPosition - newSize + oldSize;
+        }
+        if (null == window) {
+            return NO_POSITION;
+        }
+        final int oldPosition = window.convertNewPositionToOld(newPosition - prefix);
+        return oldPosition == NO_POSITION ? NO_POSITION : oldPosition + prefix;
+    }
+
+    @Override
+    public boolean isContentChanged(int newPosition) {
+        if (newPosition < prefix || newPosition >= newSize - suffix || null == window) {
+            return false;
+        }
+        return window.isContentChanged(newPosition - prefix);
+    }
+
+    @Override
+    public String toString() {
+        return "TrimmedDiff{prefix=" + prefix + ", suffix=" + suffix + ", window=" + window + "}";
+    }
+}
@@ -0,0 +1,361 @@
+/* 
+ * Copyright 2014 InQBarna Kenkyuu Jo SL 
+ * 
+ * Licensed under the Apache License, Version 2.0 (the "License"); 
+ * you may not use this file except in compliance with the License. 
+ * You may obtain a copy of the License at 
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0 
+ * 
+ * Unless required by applicable law or agreed to in writing, software 
+ * distributed under the License is distributed on an "AS IS" BASIS, 
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. 
+ * See the License for the specific language governing permissions and 
+ * limitations under the License. 
+ */ 
+
+package com.inqbarna.adapters.benchmarks;
+
+import com.google.common.collect.ImmutableList;
+import com.inqbarna.adapters.DiffEngine;
+import com.inqbarna.adapters.DiffEngines;
+import com.inqbarna.adapters.DiffResult;
+import com.inqbarna.adapters.internal.ChunkedList;
+import com.inqbarna.adapters.internal.ComparisonCallback;
+import com.inqbarna.adapters.internal.EditScript;
+import com.inqbarna.adapters.internal.ResultApplier;
+import com.inqbarna.adapters.internal.TrimmedDiff;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.ListUpdateCallback;
+
+/**
+ * Stages of a {@code BasicBindingAdapter.updateItems} call, measured on synthetic lists: snapshot copy of current data,
+ * diff computation, and application of the result on adapter data followed by notification dispatch.
+ * <p>
+ * Target list is derived from current one removing, changing, moving and inserting the given ratios of items at
+ * random positions. Notice {@link Engine#DIFF_UTIL} cost grows with the number of differences times list size, so big
+ * sizes with high ratios may take very long.
+ * <p>
+ * Diffs go through the same steps as the adapter: common prefix and suffix are trimmed, unless {@link #trim} is off,
+ * and the window left is diffed by the engine picked by the {@link DiffEngine.Selector} of {@link #engine}.
+ */
+@State(Scope.Benchmark)
+public class UpdatePipelineBenchmark {
+
+    public enum Engine {
+        DIFF_UTIL(DiffEngines.fixed(DiffEngines.MYERS), false),
+        KEYED(DiffEngines.fixed(DiffEngines.KEYED), true),
+        PATIENCE(DiffEngines.fixed(DiffEngines.PATIENCE), true),
+        /** Default selection of an adapter given a plain {@code DiffCallback}, without keys */
+        ADAPTIVE(DiffEngines.adaptive(), false);
+
+        final DiffEngine.Selector selector;
+        final boolean             keyed;
+
+        Engine(DiffEngine.Selector selector, boolean keyed) {
+            this.selector = selector;
+            this.keyed = keyed;
+        }
+    }
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int size;
+
+    @Param({"DIFF_UTIL", "KEYED", "PATIENCE", "ADAPTIVE"})
+    public Engine engine;
+
+    @Param({"true"})
+    public boolean trim;
+
+    @Param({"0.001"})
+    public double insertRatio;
+
+    @Param({"0.001"})
+    public double removeRatio;
+
+    @Param({"0.001"})
+    public double moveRatio;
+
+    @Param({"0.01"})
+    public double changeRatio;
+
+    private List<Item> current;
+    private List<Item> target;
+    private DiffResult result;
+    private EditScript script;
+
+    @Setup(Level.Trial)
+    public void createLists() {
+        final Random random = new Random(42);
+        current = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            current.add(new Item(i, i));
+        }
+        target = mutate(current, random);
+        result = diff(current, target);
+        script = EditScript.fromResult(result, current.size(), target.size());
+    }
+
+    /**
+     * Data held by the adapter, restored before each apply so every invocation does the same work
+     */
+    @State(Scope.Thread)
+    public static class AdapterData {
+        ChunkedList<Item> data;
+
+        @Setup(Level.Invocation)
+        public void restore(UpdatePipelineBenchmark benchmark) {
+            data = new ChunkedList<>();
+            data.addAll(benchmark.current);
+        }
+    }
+
+    @Benchmark
+    public List<Item> snapshot() {
+        return ImmutableList.copyOf(current);
+    }
+
+    @Benchmark
+    public DiffResult diff() {
+        return diff(current, target);
+    }
+
+    @Benchmark
+    public int apply(AdapterData adapterData) {
+        return apply(adapterData.data, script, result);
+    }
+
+    /**
+     * Whole update as the adapter runs it, diff result and its script being computed off the main thread
+     */
+    @Benchmark
+    public int update(AdapterData adapterData) {
+        final List<Item> snapshot = adapterData.data.snapshot();
+        final DiffResult diffResult = diff(snapshot, target);
+        return apply(adapterData.data, EditScript.fromResult(diffResult, snapshot.size(), target.size()), diffResult);
+    }
+
+    private DiffResult diff(final List<Item> oldList, final List<Item> newList) {
+        final ComparisonCallback.Items<Item> items = new ComparisonCallback.Items<Item>() {
+            @Override
+            public boolean areSameEntity(Item oldItem, Item newItem) {
+                return oldItem.id == newItem.id;
+            }
+
+            @Override
+            public boolean areContentsTheSame(int oldPosition, int newPosition) {
+                return oldList.get(oldPosition).content == newList.get(newPosition).content;
+            }
+
+            @Override
+            public Object getChangePayload(int newPosition, int count) {
+                return count == 1 ? newList.get(newPosition) : newList.subList(newPosition, newPosition + count);
+            }
+        };
+
+        final int oldSize = oldList.size();
+        final int newSize = newList.size();
+        int prefix = 0;
+        int suffix = 0;
+        if (trim) {
+            prefix = TrimmedDiff.commonPrefix(oldList, newList, items);
+            suffix = TrimmedDiff.commonSuffix(oldList, newList, prefix, items);
+            if (!TrimmedDiff.needsWindowDiff(oldSize, newSize, prefix, suffix)) {
+                return TrimmedDiff.withoutWindow(oldSize, newSize, prefix, suffix);
+            }
+        }
+        final WindowInput input = new WindowInput(oldList, newList, prefix, oldSize - prefix - suffix, newSize - prefix - suffix, items, engine.keyed);
+        final DiffResult window = engine.selector.select(input).calculate(input);
+        return prefix == 0 && suffix == 0 ? window : TrimmedDiff.withWindow(oldSize, newSize, prefix, suffix, window);
+    }
+
+    private int apply(List<Item> data, EditScript editScript, DiffResult diffResult) {
+        ResultApplier.apply(data, editScript, diffResult, target, NO_OP_ITEM_CALLBACK);
+        final CountingCallback notifications = new CountingCallback();
+        diffResult.dispatchUpdatesTo(notifications);
+        return notifications.count;
+    }
+
+    private List<Item> mutate(List<Item> source, Random random) {
+        final int count = source.size();
+        final boolean[] removed = pick(count, removeRatio, random);
+        final boolean[] moved = pick(count, moveRatio, random);
+        final boolean[] changed = pick(count, changeRatio, random);
+
+        // Items staying at their relative order, then moved and new ones placed at random slots among them
+        final List<Item> base = new ArrayList<>(count);
+        final List<Placed> extra = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            if (removed[i]) {
+                continue;
+            }
+            final Item item = source.get(i);
+            final Item targetItem = changed[i] ? new Item(item.id, item.content + 1) : item;
+            if (moved[i]) {
+                extra.add(new Placed(targetItem));
+            } else {
+                base.add(targetItem);
+            }
+        }
+        for (int i = 0, inserts = (int) (count * insertRatio); i < inserts; i++) {
+            extra.add(new Placed(new Item(count + i, count + i)));
+        }
+        for (Placed placed : extra) {
+            placed.slot = random.nextInt(base.size() + 1);
+        }
+        extra.sort(new Comparator<Placed>() {
+            @Override
+            public int compare(Placed a, Placed b) {
+                return Integer.compare(a.slot, b.slot);
+            }
+        });
+
+        final List<Item> result = new ArrayList<>(base.size() + extra.size());
+        int next = 0;
+        for (int slot = 0; slot <= base.size(); slot++) {
+            while (next < extra.size() && extra.get(next).slot == slot) {
+                result.add(extra.get(next++).item);
+            }
+            if (slot < base.size()) {
+                result.add(base.get(slot));
+            }
+        }
+        return result;
+    }
+
+    private static boolean[] pick(int count, double ratio, Random random) {
+        final boolean[] picked = new boolean[count];
+        final int total = (int) (count * ratio);
+        int done = 0;
+        while (done < total) {
+            final int position = random.nextInt(count);
+            if (!picked[position]) {
+                picked[position] = true;
+                done++;
+            }
+        }
+        return picked;
+    }
+
+    private static final ResultApplier.ItemCallback<Item> NO_OP_ITEM_CALLBACK = new ResultApplier.ItemCallback<Item>() {
+        @Override
+        public void onRemovingElement(Item item) {
+        }
+
+        @Override
+        public void releaseItemResources(Item item) {
+        }
+    };
+
+    /**
+     * Engine input for the window {@code [offset, offset + count)} of both lists, as the adapter builds it
+     */
+    private static final class WindowInput implements DiffEngine.Input<Item> {
+        private final int                            offset;
+        private final List<Item>                     oldItems;
+        private final List<Item>                     newItems;
+        private final ComparisonCallback.Items<Item> items;
+        private final boolean                        keyed;
+
+        WindowInput(List<Item> oldList, List<Item> newList, int offset, int oldCount, int newCount, ComparisonCallback.Items<Item> items, boolean keyed) {
+            this.offset = offset;
+            this.oldItems = offset == 0 && oldCount == oldList.size() ? oldList : oldList.subList(offset, offset + oldCount);
+            this.newItems = offset == 0 && newCount == newList.size() ? newList : newList.subList(offset, offset + newCount);
+            this.items = items;
+            this.keyed = keyed;
+        }
+
+        @NonNull
+        @Override
+        public List<Item> getOldItems() {
+            return oldItems;
+        }
+
+        @NonNull
+        @Override
+        public List<Item> getNewItems() {
+            return newItems;
+        }
+
+        @Override
+        public boolean areSameEntity(@NonNull Item oldItem, @NonNull Item newItem) {
+            return items.areSameEntity(oldItem, newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(int oldPosition, int newPosition) {
+            return items.areContentsTheSame(oldPosition + offset, newPosition + offset);
+        }
+
+        @Override
+        public Object getChangePayload(int newPosition, int count) {
+            return items.getChangePayload(newPosition + offset, count);
+        }
+
+        @Override
+        public boolean hasKeys() {
+            return keyed;
+        }
+
+        @Override
+        public Object keyOf(@NonNull Item item) {
+            return item.id;
+        }
+    }
+
+    public static final class Item {
+        final int  id;
+        final long content;
+
+        Item(int id, long content) {
+            this.id = id;
+            this.content = content;
+        }
+    }
+
+    private static final class Placed {
+        final Item item;
+        int        slot;
+
+        Placed(Item item) {
+            this.item = item;
+        }
+    }
+
+    private static final class CountingCallback implements ListUpdateCallback {
+        int count;
+
+        @Override
+        public void onInserted(int position, int count) {
+            this.count++;
+        }
+
+        @Override
+        public void onRemoved(int position, int count) {
+            this.count++;
+        }
+
+        @Override
+        public void onMoved(int fromPosition, int toPosition) {
+            count++;
+        }
+
+        @Override
+        public void onChanged(int position, int count, Object payload) {
+            this.count++;
+        }
+    }
+}
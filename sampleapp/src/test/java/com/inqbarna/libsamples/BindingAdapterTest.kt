@@ -16,13 +16,48 @@
 
 package com.inqbarna.libsamples
 
+import android.graphics.Canvas
+import android.graphics.Color
+import android.graphics.Paint
+import android.graphics.Rect
+import android.view.View
+import android.widget.TextView
+import androidx.databinding.DataBindingUtil
+import androidx.databinding.ViewDataBinding
+import androidx.lifecycle.Lifecycle
+import androidx.lifecycle.LifecycleOwner
+import androidx.lifecycle.LifecycleRegistry
+import androidx.recyclerview.widget.DiffUtil
+import androidx.recyclerview.widget.GridLayoutManager
+import androidx.recyclerview.widget.LinearLayoutManager
 import androidx.recyclerview.widget.RecyclerView
 import com.google.common.collect.Collections2
 import com.google.common.truth.IterableSubject
 import com.google.common.truth.Truth.assertThat
 import com.inqbarna.adapters.BasicBindingAdapter
+import com.inqbarna.adapters.BasicIndicatorDelegate
 import com.inqbarna.adapters.BasicItemBinder
+import com.inqbarna.adapters.BindingHolder
+import com.inqbarna.adapters.ContentVersioned
+import com.inqbarna.adapters.DiffEngines
+import com.inqbarna.adapters.DiffScheduler
+import com.inqbarna.adapters.GroupController
+import com.inqbarna.adapters.GroupDecorator
+import com.inqbarna.adapters.GroupIndicator
+import com.inqbarna.adapters.GroupHead
+import com.inqbarna.adapters.ItemBinder
+import com.inqbarna.adapters.ListPatch
+import com.inqbarna.adapters.SharedViewPool
 import com.inqbarna.adapters.TypeMarker
+import com.inqbarna.adapters.UpdateMetrics
+import com.inqbarna.adapters.VariablesPayload
+import com.inqbarna.adapters.ViewPrewarmer
+import com.inqbarna.adapters.internal.ChunkedList
+import com.inqbarna.adapters.internal.ComparisonCallback
+import com.inqbarna.adapters.internal.DiffUtilResult
+import com.inqbarna.adapters.internal.EditScript
+import com.inqbarna.adapters.internal.ResultApplier
+import com.inqbarna.libsamples.vm.TestVM
 import io.reactivex.functions.Predicate
 import io.reactivex.observers.TestObserver
 import org.junit.After
@@ -30,10 +65,19 @@ import org.junit.Before
 import org.junit.Test
 import org.junit.runner.RunWith
 import org.robolectric.RobolectricTestRunner
+import org.robolectric.RuntimeEnvironment
 import org.robolectric.android.util.concurrent.RoboExecutorService
 import org.robolectric.shadows.ShadowLog
+import org.robolectric.shadows.ShadowLooper
 import timber.log.Timber
+import java.lang.management.ManagementFactory
+import java.util.Collections
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.Executor
 import java.util.concurrent.ExecutorService
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.atomic.AtomicBoolean
+import java.util.concurrent.atomic.AtomicInteger
 
 /**
  * @author David García (david.garcia@inqbarna.com)
@@ -94,6 +138,48 @@ class BindingAdapterTest {
         }
     }
 
+    /**
+     * Counts comparisons, and how many times the thread comparing allocated something since the previous comparison
+     */
+    private class AllocationTrackingCallback : BasicBindingAdapter.DiffCallback<TestItems>, BasicBindingAdapter.ContentFingerprint<TestItems> {
+        private val threadBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        private val threadId = Thread.currentThread().id
+        /** Bytes allocated by reading the allocation counter itself */
+        private val overhead = threadBean.getThreadAllocatedBytes(threadId).let { threadBean.getThreadAllocatedBytes(threadId) - it }
+        private var lastComparisonEnd = -1L
+        var comparisons = 0L
+        var allocatingGaps = 0L
+
+        override fun areSameEntity(a: TestItems, b: TestItems): Boolean {
+            onComparison()
+            return a.id == b.id
+        }
+
+        override fun areContentEquals(a: TestItems, b: TestItems): Boolean {
+            onComparison()
+            return a.text == b.text
+        }
+
+        override fun contentFingerprint(item: TestItems): Long = item.text.hashCode().toLong()
+
+        private fun onComparison() {
+            val start = threadBean.getThreadAllocatedBytes(threadId)
+            if (lastComparisonEnd >= 0 && start - lastComparisonEnd > overhead) {
+                allocatingGaps++
+            }
+            comparisons++
+            lastComparisonEnd = threadBean.getThreadAllocatedBytes(threadId)
+        }
+    }
+
+    private object KeyedCallback : BasicBindingAdapter.KeyedDiffCallback<TestItems>() {
+        override fun keyOf(item: TestItems): Any = item.id
+
+        override fun areContentEquals(a: TestItems, b: TestItems): Boolean {
+            return a.text == b.text
+        }
+    }
+
     @Test
     fun testSecondWeHave() {
         adapter.setItems(listOf(
@@ -257,6 +343,700 @@ class BindingAdapterTest {
         observer.assertThat().containsExactly(Event(ObserverEventKind.ADD, 6..9), Event(ObserverEventKind.CHANGE, 3..3), Event(ObserverEventKind.CHANGE, 8..8), Event(ObserverEventKind.CHANGE, 9..9))
     }
 
+    @Test
+    fun `keyed diff inserts, moves and changes`() {
+        adapter.setDiffCallback(KeyedCallback)
+
+        val newList = mutableListOf<TestItems>()
+        INITIAL_DATA_SET.subList(0, 6).mapTo(newList) {
+            if (it.id == 3) TestItems(3, "cambiado 3") else it
+        }
+        newList.addAll(listOf(TestItems(80, "a"), TestItems(81, "b")))
+        INITIAL_DATA_SET.subList(6, 13).mapTo(newList) {
+            when (it.id) {
+                in 8..9 -> TestItems(it.id, "changed ${it.id}")
+                else -> it
+            }
+        }
+
+        val resultsObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(newList).subscribe(resultsObserver)
+
+        resultsObserver.assertComplete()
+        resultsObserver.assertValue(Predicate {
+            assertThat(it).containsExactlyElementsIn(newList).inOrder()
+            return@Predicate true
+        })
+        observer.assertThat().containsExactly(Event(ObserverEventKind.ADD, 6..7), Event(ObserverEventKind.CHANGE, 3..3), Event(ObserverEventKind.CHANGE, 10..11))
+
+        val reversed = newList.reversed()
+        val reversedObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(reversed).subscribe(reversedObserver)
+
+        reversedObserver.assertComplete()
+        reversedObserver.assertValue(Predicate {
+            assertThat(it).containsExactlyElementsIn(reversed).inOrder()
+            return@Predicate true
+        })
+    }
+
+    @Test
+    fun `pending updates are conflated and complete with the latest result`() {
+        val tasks = mutableListOf<Runnable>()
+        val manualAdapter = BasicBindingAdapter<TestItems>(BasicItemBinder(0), Executor { tasks.add(it) }).also {
+            it.setDiffCallback(DiffCallback)
+            it.setItems(INITIAL_DATA_SET)
+        }
+
+        val first = INITIAL_DATA_SET.subList(0, 10)
+        val second = INITIAL_DATA_SET.subList(0, 5)
+        val third = INITIAL_DATA_SET.reversed()
+
+        val firstObserver = TestObserver<List<TestItems>>()
+        val secondObserver = TestObserver<List<TestItems>>()
+        val thirdObserver = TestObserver<List<TestItems>>()
+        manualAdapter.updateItems(first).subscribe(firstObserver)
+        manualAdapter.updateItems(second).subscribe(secondObserver)
+        manualAdapter.updateItems(third).subscribe(thirdObserver)
+
+        // Only first one is being diffed, second is superseded by third
+        assertThat(tasks).hasSize(1)
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+
+        firstObserver.assertComplete()
+        secondObserver.assertEmpty()
+        assertThat(manualAdapter.itemCount).isEqualTo(first.size)
+
+        assertThat(tasks).hasSize(1)
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+
+        assertThat(tasks).isEmpty()
+        listOf(secondObserver, thirdObserver).forEach { resultObserver ->
+            resultObserver.assertComplete()
+            resultObserver.assertValue(Predicate {
+                assertThat(it).containsExactlyElementsIn(third).inOrder()
+                return@Predicate true
+            })
+        }
+    }
+
+    @Test
+    fun `stale update is diffed again against committed data`() {
+        val tasks = mutableListOf<Runnable>()
+        val manualAdapter = BasicBindingAdapter<TestItems>(BasicItemBinder(0), Executor { tasks.add(it) }).also {
+            it.setDiffCallback(DiffCallback)
+            it.setItems(INITIAL_DATA_SET)
+        }
+
+        val target = INITIAL_DATA_SET.reversed()
+        val resultsObserver = TestObserver<List<TestItems>>()
+        manualAdapter.updateItems(target).subscribe(resultsObserver)
+
+        // Data changes while diff is in flight
+        manualAdapter.addItems(listOf(TestItems(99, "extra")))
+
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+        resultsObserver.assertEmpty()
+
+        assertThat(tasks).hasSize(1)
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+
+        resultsObserver.assertComplete()
+        resultsObserver.assertValue(Predicate {
+            assertThat(it).containsExactlyElementsIn(target).inOrder()
+            return@Predicate true
+        })
+    }
+
+    @Test
+    fun `disposing a running diff aborts the computation`() {
+        val tasks = mutableListOf<Runnable>()
+        val resultsObserver = TestObserver<List<TestItems>>()
+        var comparisons = 0
+        val manualAdapter = BasicBindingAdapter<TestItems>(BasicItemBinder(0), Executor { tasks.add(it) }).also {
+            it.setDiffCallback(object : BasicBindingAdapter.DiffCallback<TestItems> {
+                override fun areSameEntity(a: TestItems, b: TestItems): Boolean {
+                    if (++comparisons == 10) {
+                        resultsObserver.dispose()
+                    }
+                    return a.id == b.id
+                }
+
+                override fun areContentEquals(a: TestItems, b: TestItems): Boolean = a.text == b.text
+            })
+            it.setItems((0 until 2000).map { id -> TestItems(id, "old $id") })
+        }
+
+        // Nothing in common, so a full diff would compare millions of pairs
+        manualAdapter.updateItems((2000 until 4000).map { id -> TestItems(id, "new $id") }).subscribe(resultsObserver)
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+
+        assertThat(comparisons).isLessThan(10_000)
+        resultsObserver.assertEmpty()
+        assertThat(manualAdapter.itemCount).isEqualTo(2000)
+    }
+
+    @Test
+    fun `scheduler runs diffs of attached adapters first`() {
+        val scheduler = DiffScheduler(1)
+        val release = blockWorker(scheduler)
+        val diffed = Collections.synchronizedList(mutableListOf<String>())
+        fun recordingAdapter(name: String) = BasicBindingAdapter<TestItems>(BasicItemBinder(0), scheduler).also {
+            it.setDiffCallback(object : BasicBindingAdapter.DiffCallback<TestItems> {
+                override fun areSameEntity(a: TestItems, b: TestItems): Boolean {
+                    if (diffed.lastOrNull() != name) {
+                        diffed.add(name)
+                    }
+                    return a.id == b.id
+                }
+
+                override fun areContentEquals(a: TestItems, b: TestItems): Boolean = a.text == b.text
+            })
+            it.setItems(INITIAL_DATA_SET)
+        }
+        val detached = recordingAdapter("detached")
+        val attached = recordingAdapter("attached")
+        RecyclerView(RuntimeEnvironment.application).adapter = attached
+
+        val detachedObserver = TestObserver<List<TestItems>>()
+        val attachedObserver = TestObserver<List<TestItems>>()
+        detached.updateItems(INITIAL_DATA_SET.reversed()).subscribe(detachedObserver)
+        attached.updateItems(INITIAL_DATA_SET.reversed()).subscribe(attachedObserver)
+        release.countDown()
+        awaitOnMainLooper { detachedObserver.isTerminated && attachedObserver.isTerminated }
+
+        detachedObserver.assertComplete()
+        attachedObserver.assertComplete()
+        assertThat(diffed).containsExactly("attached", "detached").inOrder()
+    }
+
+    @Test
+    fun `scheduler drops superseded diffs before they start`() {
+        val scheduler = DiffScheduler(1)
+        val release = blockWorker(scheduler)
+        val superseded = INITIAL_DATA_SET + TestItems(100, "superseded")
+        val latest = INITIAL_DATA_SET.reversed()
+        val supersededDiffed = AtomicBoolean()
+        val schedulerAdapter = BasicBindingAdapter<TestItems>(BasicItemBinder(0), scheduler).also {
+            it.setDiffCallback(object : BasicBindingAdapter.DiffCallback<TestItems> {
+                override fun areSameEntity(a: TestItems, b: TestItems): Boolean {
+                    if (b.id == 100) {
+                        supersededDiffed.set(true)
+                    }
+                    return a.id == b.id
+                }
+
+                override fun areContentEquals(a: TestItems, b: TestItems): Boolean = a.text == b.text
+            })
+            it.setItems(INITIAL_DATA_SET)
+        }
+
+        val supersededObserver = TestObserver<List<TestItems>>()
+        val latestObserver = TestObserver<List<TestItems>>()
+        schedulerAdapter.updateItems(superseded).subscribe(supersededObserver)
+        schedulerAdapter.updateItems(latest).subscribe(latestObserver)
+        release.countDown()
+        awaitOnMainLooper { supersededObserver.isTerminated && latestObserver.isTerminated }
+
+        assertThat(supersededDiffed.get()).isFalse()
+        listOf(supersededObserver, latestObserver).forEach { resultObserver ->
+            resultObserver.assertComplete()
+            resultObserver.assertValue(Predicate {
+                assertThat(it).containsExactlyElementsIn(latest).inOrder()
+                return@Predicate true
+            })
+        }
+    }
+
+    @Test
+    fun `scheduler runs a burst of tasks up to its parallelism`() {
+        val scheduler = DiffScheduler(2)
+        // Leaves an idle worker, that has to be helped by a new one when tasks arrive in a burst
+        val warmedUp = CountDownLatch(1)
+        scheduler.execute { warmedUp.countDown() }
+        assertThat(warmedUp.await(5, TimeUnit.SECONDS)).isTrue()
+
+        val running = AtomicInteger()
+        val maxRunning = AtomicInteger()
+        val started = CountDownLatch(2)
+        val finished = CountDownLatch(4)
+        val release = CountDownLatch(1)
+        repeat(4) {
+            scheduler.execute {
+                maxRunning.accumulateAndGet(running.incrementAndGet()) { a, b -> Math.max(a, b) }
+                started.countDown()
+                release.await(5, TimeUnit.SECONDS)
+                running.decrementAndGet()
+                finished.countDown()
+            }
+        }
+
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue()
+        // Give a third task the chance to start, if parallelism was not honored
+        Thread.sleep(100)
+        assertThat(running.get()).isEqualTo(2)
+        release.countDown()
+        assertThat(finished.await(5, TimeUnit.SECONDS)).isTrue()
+        assertThat(maxRunning.get()).isEqualTo(2)
+    }
+
+    /**
+     * Keeps the only worker of given scheduler busy, so submitted tasks wait in its queue until released
+     */
+    private fun blockWorker(scheduler: DiffScheduler): CountDownLatch {
+        val started = CountDownLatch(1)
+        val release = CountDownLatch(1)
+        scheduler.execute {
+            started.countDown()
+            release.await(5, TimeUnit.SECONDS)
+        }
+        assertThat(started.await(5, TimeUnit.SECONDS)).isTrue()
+        return release
+    }
+
+    private fun awaitOnMainLooper(condition: () -> Boolean) {
+        val deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5)
+        while (!condition()) {
+            assertThat(System.nanoTime()).isLessThan(deadline)
+            Thread.sleep(5)
+            ShadowLooper.idleMainLooper()
+        }
+    }
+
+    @Test
+    fun `result applied by frames keeps data consistent with notifications`() {
+        val tasks = mutableListOf<Runnable>()
+        val manualAdapter = BasicBindingAdapter<TestItems>(BasicItemBinder(0), Executor { tasks.add(it) }).also {
+            it.setDiffCallback(DiffCallback)
+            it.setItems(INITIAL_DATA_SET)
+            it.setApplyFrameBudget(1, TimeUnit.NANOSECONDS)
+        }
+
+        var notifiedCount = manualAdapter.itemCount
+        manualAdapter.registerAdapterDataObserver(object : RecyclerView.AdapterDataObserver() {
+            override fun onItemRangeInserted(positionStart: Int, itemCount: Int) {
+                notifiedCount += itemCount
+                assertThat(manualAdapter.itemCount).isEqualTo(notifiedCount)
+            }
+
+            override fun onItemRangeRemoved(positionStart: Int, itemCount: Int) {
+                notifiedCount -= itemCount
+                assertThat(manualAdapter.itemCount).isEqualTo(notifiedCount)
+            }
+        })
+
+        val target = INITIAL_DATA_SET.drop(3).reversed() + listOf(TestItems(20, "texto 20"), TestItems(21, "texto 21"))
+        val resultsObserver = TestObserver<List<TestItems>>()
+        manualAdapter.updateItems(target).subscribe(resultsObserver)
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+
+        // First frame only has time for a single operation
+        resultsObserver.assertEmpty()
+
+        var frames = 1
+        while (resultsObserver.values().isEmpty() && frames < 100) {
+            ShadowLooper.runUiThreadTasksIncludingDelayedTasks()
+            frames++
+        }
+
+        assertThat(frames).isGreaterThan(2)
+        resultsObserver.assertComplete()
+        assertThat((0 until manualAdapter.itemCount).map { manualAdapter.getDataAt(it) }).containsExactlyElementsIn(target).inOrder()
+    }
+
+    private object TextVariableCallback : BasicBindingAdapter.DiffCallback<TestItems>, BasicBindingAdapter.ChangedVariables<TestItems> {
+        const val TEXT_VARIABLE = 7
+
+        override fun areSameEntity(a: TestItems, b: TestItems): Boolean = a.id == b.id
+
+        override fun areContentEquals(a: TestItems, b: TestItems): Boolean = a.text == b.text
+
+        override fun changedVariables(oldItem: TestItems, newItem: TestItems): IntArray? = intArrayOf(TEXT_VARIABLE)
+    }
+
+    @Test
+    fun `changed items are notified with the changed variables`() {
+        adapter.setDiffCallback(TextVariableCallback)
+        val payloads = mutableListOf<Any?>()
+        adapter.registerAdapterDataObserver(object : RecyclerView.AdapterDataObserver() {
+            override fun onItemRangeChanged(positionStart: Int, itemCount: Int, payload: Any?) {
+                payloads.add(payload)
+            }
+        })
+
+        val newItems = INITIAL_DATA_SET.map { if (it.id == 4) TestItems(4, "changed 4") else it }
+        val resultsObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(newItems).subscribe(resultsObserver)
+
+        resultsObserver.assertComplete()
+        assertThat(payloads).hasSize(1)
+        val payload = payloads[0] as VariablesPayload
+        assertThat(payload.contains(TextVariableCallback.TEXT_VARIABLE)).isTrue()
+        assertThat(payload.contains(TextVariableCallback.TEXT_VARIABLE + 1)).isFalse()
+    }
+
+    @Test
+    fun `metrics are reported for applied and superseded updates`() {
+        val tasks = mutableListOf<Runnable>()
+        val metrics = mutableListOf<UpdateMetrics>()
+        val manualAdapter = BasicBindingAdapter<TestItems>(BasicItemBinder(0), Executor { tasks.add(it) }).also {
+            it.setDiffCallback(DiffCallback)
+            it.setItems(INITIAL_DATA_SET)
+            it.setUpdateMetricsListener(BasicBindingAdapter.UpdateMetricsListener { m -> metrics.add(m) })
+        }
+
+        val first = INITIAL_DATA_SET.subList(0, 10).map { if (it.id == 3) TestItems(3, "changed 3") else it }
+        manualAdapter.updateItems(first).subscribe(TestObserver<List<TestItems>>())
+        manualAdapter.updateItems(INITIAL_DATA_SET).subscribe(TestObserver<List<TestItems>>())
+        manualAdapter.updateItems(INITIAL_DATA_SET.reversed()).subscribe(TestObserver<List<TestItems>>())
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+
+        // Second update superseded by third while first one was in flight
+        assertThat(metrics).hasSize(2)
+        assertThat(metrics[0].isSuperseded).isTrue()
+        with(metrics[1]) {
+            assertThat(isSuperseded).isFalse()
+            assertThat(isCancelled).isFalse()
+            assertThat(oldSize).isEqualTo(13)
+            assertThat(newSize).isEqualTo(10)
+            assertThat(removed).isEqualTo(3)
+            assertThat(inserted).isEqualTo(0)
+            assertThat(changed).isEqualTo(1)
+            assertThat(diffNanos).isGreaterThan(0L)
+            assertThat(applyNanos).isGreaterThan(0L)
+        }
+    }
+
+    @Test
+    fun `chosen diff engine is reported on metrics`() {
+        val metrics = mutableListOf<UpdateMetrics>()
+        adapter.setUpdateMetricsListener(BasicBindingAdapter.UpdateMetricsListener { m -> metrics.add(m) })
+
+        val changed = INITIAL_DATA_SET.map { if (it.id == 5) TestItems(5, "changed 5") else it }
+        adapter.updateItems(changed).subscribe(TestObserver<List<TestItems>>())
+        adapter.setDiffCallback(KeyedCallback)
+        adapter.updateItems(INITIAL_DATA_SET).subscribe(TestObserver<List<TestItems>>())
+        adapter.updateItems(INITIAL_DATA_SET + listOf(TestItems(20, "texto 20"))).subscribe(TestObserver<List<TestItems>>())
+
+        adapter.setDiffEngine(DiffEngines.PATIENCE)
+        val reordered = listOf(TestItems(20, "texto 20")) + INITIAL_DATA_SET.reversed().map { if (it.id == 7) TestItems(7, "changed 7") else it }
+        val resultsObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(reordered).subscribe(resultsObserver)
+
+        resultsObserver.assertComplete()
+        assertThat(adapter.snapshotItems()).containsExactlyElementsIn(reordered).inOrder()
+        assertThat(metrics.map { it.diffEngine }).containsExactly(DiffEngines.MYERS.name, DiffEngines.KEYED.name, null, DiffEngines.PATIENCE.name).inOrder()
+    }
+
+    @Test
+    fun `diff comparisons do not allocate`() {
+        val size = 100_000
+        val oldItems = (0 until size).map { TestItems(it, "texto $it") }
+        val newItems = (0 until size).map { TestItems(it, if (it % 10 == 0) "changed $it" else "texto $it") }
+        val comparison = ComparisonCallback(oldItems, newItems, object : ComparisonCallback.Items<TestItems> {
+            override fun areSameEntity(oldItem: TestItems, newItem: TestItems): Boolean = oldItem.id == newItem.id
+
+            override fun areContentsTheSame(oldPosition: Int, newPosition: Int): Boolean =
+                    oldItems[oldPosition].text == newItems[newPosition].text
+
+            override fun getChangePayload(newPosition: Int, count: Int): Any? = null
+        })
+
+        var allocated = 0L
+        // First rounds warm up class loading and compilation
+        repeat(4) {
+            allocated = allocatedBytes {
+                for (i in 0 until size) {
+                    comparison.areItemsTheSame(i, i)
+                    comparison.areContentsTheSame(i, i)
+                }
+            }
+        }
+
+        assertThat(allocated).isEqualTo(0L)
+        assertThat(comparison.contentChanged.count { it }).isEqualTo(size / 10)
+    }
+
+    @Test
+    fun `diffs through the update pipeline do not allocate per comparison`() {
+        val size = 100_000
+        val text = "texto"
+        val oldItems = (0 until size).map { TestItems(it, text) }
+        // Few scattered replacements, so the diff window spans almost the whole list and Myers is chosen
+        val replaced = 10
+        val newItems = oldItems.map { if (it.id % (size / replaced) == 1) TestItems(size + it.id, text) else it }
+        val tasks = mutableListOf<Runnable>()
+        val metrics = mutableListOf<UpdateMetrics>()
+
+        lateinit var callback: AllocationTrackingCallback
+        // First rounds warm up class loading and compilation
+        repeat(3) {
+            callback = AllocationTrackingCallback()
+            val pipelineAdapter = BasicBindingAdapter<TestItems>(BasicItemBinder(0), Executor { tasks.add(it) }).also {
+                it.setDiffCallback(callback)
+                it.setItems(oldItems)
+                it.setUpdateMetricsListener(BasicBindingAdapter.UpdateMetricsListener { m -> metrics.add(m) })
+            }
+            val resultObserver = TestObserver<List<TestItems>>()
+            pipelineAdapter.updateItems(newItems).subscribe(resultObserver)
+            tasks.removeAt(0).run()
+            ShadowLooper.idleMainLooper()
+
+            resultObserver.assertComplete()
+            assertThat(pipelineAdapter.snapshotItems()).containsExactlyElementsIn(newItems).inOrder()
+        }
+
+        assertThat(metrics.map { it.diffEngine }).containsExactly(DiffEngines.MYERS.name, DiffEngines.MYERS.name, DiffEngines.MYERS.name)
+        // Setting up the diff and recording each change found allocates between a few comparisons, comparing never does
+        assertThat(callback.comparisons).isGreaterThan(size.toLong())
+        assertThat(callback.allocatingGaps).isAtMost(16L * replaced)
+    }
+
+    @Test
+    fun `result is applied in place keeping instances of unchanged items`() {
+        val original = (0 until 10).map { TestItems(it, "texto $it") }
+        val data = ChunkedList<TestItems>().apply { addAll(original) }
+        // Copies of kept items, but 2 changes, 4 and 7 are removed, 9 moves first and 20 and 21 are inserted
+        val target = listOf(9, 0, 1, 2, 20, 3, 5, 6, 8, 21).map {
+            when {
+                it == 2 -> TestItems(it, "cambiado $it")
+                it >= 20 -> TestItems(it, "nuevo $it")
+                else -> TestItems(it, "texto $it")
+            }
+        }
+        val comparison = ComparisonCallback(original, target, object : ComparisonCallback.Items<TestItems> {
+            override fun areSameEntity(oldItem: TestItems, newItem: TestItems): Boolean = oldItem.id == newItem.id
+
+            override fun areContentsTheSame(oldPosition: Int, newPosition: Int): Boolean =
+                    original[oldPosition].text == target[newPosition].text
+
+            override fun getChangePayload(newPosition: Int, count: Int): Any? = null
+        })
+        val result = DiffUtilResult(DiffUtil.calculateDiff(comparison), comparison.contentChanged)
+
+        val removing = mutableListOf<TestItems>()
+        val released = mutableListOf<TestItems>()
+        ResultApplier.apply(data, EditScript.fromResult(result, original.size, target.size), result, target, object : ResultApplier.ItemCallback<TestItems> {
+            override fun onRemovingElement(item: TestItems) {
+                removing.add(item)
+            }
+
+            override fun releaseItemResources(item: TestItems) {
+                released.add(item)
+            }
+        })
+
+        assertThat(data).containsExactlyElementsIn(target).inOrder()
+        target.forEachIndexed { position, item ->
+            val kept = original.find { it.id == item.id && it.text == item.text }
+            assertThat(data[position]).isSameAs(kept ?: item)
+        }
+        assertThat(removing).containsExactly(original[2], original[4], original[7])
+        assertThat(released.map { it.id }).containsExactly(9, 0, 1, 3, 5, 6, 8).inOrder()
+        released.forEach { copy -> assertThat(data.none { it === copy }).isTrue() }
+    }
+
+    @Test
+    fun `range removals drop and trim chunks as a plain list would`() {
+        val chunked = ChunkedList<Int>().apply { addAll(0 until 1000) }
+        val expected = (0 until 1000).toMutableList()
+        val snapshot = chunked.snapshot()
+
+        // Within a chunk, across chunk boundaries, spanning many whole chunks and up to the end
+        listOf(10 until 20, 60 until 70, 100 until 600, 0 until 1, 300 until 479).forEach { range ->
+            chunked.subList(range.first, range.last + 1).clear()
+            expected.subList(range.first, range.last + 1).clear()
+            assertThat(chunked).containsExactlyElementsIn(expected).inOrder()
+        }
+        assertThat(chunked).hasSize(300)
+        chunked.add(5, -1)
+        expected.add(5, -1)
+        assertThat(chunked).containsExactlyElementsIn(expected).inOrder()
+        assertThat(snapshot).containsExactlyElementsIn(0 until 1000).inOrder()
+    }
+
+    @Test
+    fun `snapshots are not affected by later changes and can be submitted back`() {
+        val snapshot = adapter.snapshotItems()
+        adapter.addItems(listOf(TestItems(20, "texto 20")))
+        adapter.removeItem(INITIAL_DATA_SET[0])
+
+        assertThat(snapshot).containsExactlyElementsIn(INITIAL_DATA_SET).inOrder()
+        assertThat(adapter.itemCount).isEqualTo(INITIAL_DATA_SET.size)
+
+        val resultsObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(snapshot).subscribe(resultsObserver)
+
+        resultsObserver.assertComplete()
+        resultsObserver.assertValue(Predicate {
+            assertThat(it).containsExactlyElementsIn(INITIAL_DATA_SET).inOrder()
+            return@Predicate true
+        })
+    }
+
+    @Test
+    fun `removed items are released in batches on release executor`() {
+        val releaseTasks = mutableListOf<Runnable>()
+        val released = mutableListOf<TestItems>()
+        val releasingAdapter = object : BasicBindingAdapter<TestItems>(BasicItemBinder(0), offThreadExecutor) {
+            override fun releaseItemResources(item: TestItems) {
+                released.add(item)
+            }
+
+            override fun releaseOnMainThread(item: TestItems): Boolean = item.id == 0
+        }.also {
+            it.setItems(INITIAL_DATA_SET)
+            it.setReleaseExecutor(Executor { task -> releaseTasks.add(task) })
+        }
+
+        releasingAdapter.setItems(emptyList())
+
+        // Only the item opting out is released right away
+        assertThat(released).containsExactly(INITIAL_DATA_SET[0])
+        assertThat(releaseTasks).isEmpty()
+
+        ShadowLooper.idleMainLooper()
+        assertThat(releaseTasks).hasSize(1)
+        releaseTasks.removeAt(0).run()
+        assertThat(released).containsExactlyElementsIn(INITIAL_DATA_SET)
+    }
+
+    @Test
+    fun `patch is applied with coalesced notifications`() {
+        val patch = ListPatch.Builder<TestItems>()
+                .replace(3, TestItems(3, "replaced 3"))
+                .replace(4, TestItems(4, "replaced 4"))
+                .remove(10, 2)
+                .insert(0, listOf(TestItems(50, "new")))
+                .move(1, 0)
+                .build()
+
+        adapter.applyPatch(patch)
+
+        val expected = mutableListOf(TestItems(0, "texto 0"), TestItems(50, "new"))
+        expected.addAll(INITIAL_DATA_SET.subList(1, 10).map {
+            when (it.id) {
+                3, 4 -> TestItems(it.id, "replaced ${it.id}")
+                else -> it
+            }
+        })
+        expected.add(TestItems(12, "texto 12"))
+
+        assertThat((0 until adapter.itemCount).map { adapter.getDataAt(it) }).containsExactlyElementsIn(expected).inOrder()
+        observer.assertThat().containsExactly(
+                Event(ObserverEventKind.CHANGE, 3..4),
+                Event(ObserverEventKind.REMOVE, 10..11),
+                Event(ObserverEventKind.ADD, 0..0),
+                Event(ObserverEventKind.MOVE, 1..1, 0)
+        ).inOrder()
+    }
+
+    @Test(expected = IndexOutOfBoundsException::class)
+    fun `patch out of bounds is rejected`() {
+        adapter.applyPatch(ListPatch.Builder<TestItems>().remove(12, 2).build())
+    }
+
+    private class FingerprintCallback : BasicBindingAdapter.DiffCallback<TestItems>, BasicBindingAdapter.ContentFingerprint<TestItems> {
+        var computed = 0
+
+        override fun areSameEntity(a: TestItems, b: TestItems): Boolean = a.id == b.id
+
+        override fun areContentEquals(a: TestItems, b: TestItems): Boolean {
+            throw AssertionError("Contents should be compared through fingerprints")
+        }
+
+        override fun contentFingerprint(item: TestItems): Long {
+            computed++
+            return item.text.hashCode().toLong()
+        }
+    }
+
+    @Test
+    fun `fingerprints replace content comparison and are kept for next update`() {
+        val fingerprints = FingerprintCallback()
+        adapter.setDiffCallback(fingerprints)
+
+        val newList = INITIAL_DATA_SET.map { if (it.id == 3) TestItems(3, "cambiado 3") else it }
+        val resultsObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(newList).subscribe(resultsObserver)
+
+        resultsObserver.assertComplete()
+        observer.assertThat().containsExactly(Event(ObserverEventKind.CHANGE, 3..3))
+        assertThat(fingerprints.computed).isEqualTo(INITIAL_DATA_SET.size + newList.size)
+
+        // Source fingerprints are reused, only target ones are computed
+        val secondList = newList.subList(0, 5)
+        val secondObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(secondList).subscribe(secondObserver)
+
+        secondObserver.assertComplete()
+        assertThat(fingerprints.computed).isEqualTo(INITIAL_DATA_SET.size + newList.size + secondList.size)
+    }
+
+    @Test
+    fun `fingerprints of an update in flight are dropped when diff callback changes`() {
+        val tasks = mutableListOf<Runnable>()
+        val first = FingerprintCallback()
+        val fingerprintAdapter = BasicBindingAdapter<TestItems>(BasicItemBinder(0), Executor { tasks.add(it) }).also {
+            it.setDiffCallback(first)
+            it.setItems(INITIAL_DATA_SET)
+        }
+
+        val newList = INITIAL_DATA_SET.map { if (it.id == 3) TestItems(3, "cambiado 3") else it }
+        val resultsObserver = TestObserver<List<TestItems>>()
+        fingerprintAdapter.updateItems(newList).subscribe(resultsObserver)
+        tasks.removeAt(0).run()
+        val second = FingerprintCallback()
+        fingerprintAdapter.setDiffCallback(second)
+        ShadowLooper.idleMainLooper()
+        resultsObserver.assertComplete()
+
+        val secondList = newList.subList(0, 5)
+        val secondObserver = TestObserver<List<TestItems>>()
+        fingerprintAdapter.updateItems(secondList).subscribe(secondObserver)
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+        secondObserver.assertComplete()
+        // Fingerprints computed by the first callback are not reused by the second one
+        assertThat(second.computed).isEqualTo(newList.size + secondList.size)
+    }
+
+    @Test
+    fun `appended page is a single insertion without diffing`() {
+        var comparisons = 0
+        adapter.setDiffCallback(object : BasicBindingAdapter.DiffCallback<TestItems> {
+            override fun areSameEntity(a: TestItems, b: TestItems): Boolean {
+                comparisons++
+                return a.id == b.id
+            }
+
+            override fun areContentEquals(a: TestItems, b: TestItems): Boolean = a.text == b.text
+        })
+
+        val newList = INITIAL_DATA_SET + listOf(TestItems(20, "texto 20"), TestItems(21, "texto 21"))
+        val resultsObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(newList).subscribe(resultsObserver)
+
+        resultsObserver.assertComplete()
+        observer.assertThat().containsExactly(Event(ObserverEventKind.ADD, 13..14))
+        // Only the linear pass over the common prefix
+        assertThat(comparisons).isEqualTo(INITIAL_DATA_SET.size)
+
+        val changedInMiddle = newList.map { if (it.id == 6) TestItems(6, "changed 6") else it }
+        val changedObserver = TestObserver<List<TestItems>>()
+        adapter.updateItems(changedInMiddle).subscribe(changedObserver)
+
+        changedObserver.assertComplete()
+        assertThat(adapter.snapshotItems()).containsExactlyElementsIn(changedInMiddle).inOrder()
+    }
+
     @Test
     fun anotherConflictingCase() {
         adapter.setItems(listOf(
@@ -303,11 +1083,515 @@ class BindingAdapterTest {
         observer.assertThat().containsExactly(Event(ObserverEventKind.ADD, 0..3))
     }
 
+    @Test
+    fun `batch group changes are notified as merged ranges`() {
+        val items = (0 until 12).map { GroupTestItem(if (it % 3 == 0) 3 else 1) }
+        val groupAdapter = BasicBindingAdapter<GroupTestItem>(BasicItemBinder(0), offThreadExecutor).also { it.setItems(items) }
+        val groupObserver = TestAdapterObserver()
+        groupAdapter.registerAdapterDataObserver(groupObserver)
+
+        GroupController.batch(items)
+                .enableGroup(items[9])
+                .enableGroup(items[0])
+                .enableGroup(items[3])
+                .apply()
+                .notifyOn(groupAdapter)
+
+        groupObserver.assertThat().containsExactly(Event(ObserverEventKind.CHANGE, 0..5), Event(ObserverEventKind.CHANGE, 9..11)).inOrder()
+        assertThat(items.map { it.enabled() }).containsExactly(true, true, true, true, true, true, false, false, false, true, true, true).inOrder()
+    }
+
+    @Test
+    fun `prewarmed holders are served from the pool and counted once bound`() {
+        val tasks = mutableListOf<Runnable>()
+        val recyclerView = RecyclerView(RuntimeEnvironment.application)
+        val warmAdapter = BasicBindingAdapter<LayoutItem>(ItemBinder { _, _, _ -> }, offThreadExecutor).also {
+            it.setItems(listOf(LayoutItem(R.layout.number_item)))
+        }
+
+        val prewarmer = ViewPrewarmer(warmAdapter, recyclerView, Executor { tasks.add(it) }).prewarm(R.layout.number_item, 3)
+        assertThat(prewarmer.prewarmedCount).isEqualTo(0)
+
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+
+        val pool = recyclerView.recycledViewPool
+        assertThat(prewarmer.prewarmedCount).isEqualTo(3)
+        assertThat(pool.getRecycledViewCount(R.layout.number_item)).isEqualTo(3)
+
+        val holder = pool.getRecycledView(R.layout.number_item) as BindingHolder
+        assertThat(holder.itemViewType).isEqualTo(R.layout.number_item)
+        warmAdapter.onBindViewHolder(holder, 0)
+        warmAdapter.onBindViewHolder(holder, 0)
+        assertThat(prewarmer.satisfiedCount).isEqualTo(1)
+    }
+
+    @Test
+    fun `shared pool is set on attached lists and sized after peak on screen count`() {
+        val sharedPool = SharedViewPool()
+        val first = BasicBindingAdapter<LayoutItem>(ItemBinder { _, _, _ -> }, offThreadExecutor)
+        val second = BasicBindingAdapter<LayoutItem>(ItemBinder { _, _, _ -> }, offThreadExecutor)
+        sharedPool.attach(first)
+        sharedPool.attach(second)
+        val firstList = RecyclerView(RuntimeEnvironment.application).apply { adapter = first }
+        val secondList = RecyclerView(RuntimeEnvironment.application).apply { adapter = second }
+        assertThat(firstList.recycledViewPool).isSameAs(sharedPool.pool)
+        assertThat(secondList.recycledViewPool).isSameAs(sharedPool.pool)
+
+        val holders = (0 until 8).map { first.createViewHolder(firstList, R.layout.number_item) }
+        holders.forEach { first.onViewAttachedToWindow(it) }
+        holders.take(6).forEach { first.onViewDetachedFromWindow(it) }
+        holders.take(3).forEach { first.onViewAttachedToWindow(it) }
+        assertThat(sharedPool.getPeakCount(R.layout.number_item)).isEqualTo(8)
+
+        holders.forEach { sharedPool.pool.putRecycledView(it) }
+        assertThat(sharedPool.pool.getRecycledViewCount(R.layout.number_item)).isEqualTo(8)
+    }
+
+    @Test
+    fun `holders of a shared pool take the lifecycle owner of the adapter binding them`() {
+        val sharedPool = SharedViewPool()
+        val firstOwner = TestLifecycleOwner()
+        val secondOwner = TestLifecycleOwner()
+        val first = BasicBindingAdapter<LayoutItem>(ItemBinder { _, _, _ -> }, offThreadExecutor).apply {
+            setItems(listOf(LayoutItem(R.layout.number_item)))
+            setLifecycleOwner(firstOwner)
+        }
+        val second = BasicBindingAdapter<LayoutItem>(ItemBinder { _, _, _ -> }, offThreadExecutor).apply {
+            setItems(listOf(LayoutItem(R.layout.number_item)))
+            setLifecycleOwner(secondOwner)
+        }
+        sharedPool.attach(first)
+        sharedPool.attach(second)
+        val firstList = RecyclerView(RuntimeEnvironment.application).apply { adapter = first }
+        val secondList = RecyclerView(RuntimeEnvironment.application).apply { adapter = second }
+
+        val holder = first.createViewHolder(firstList, R.layout.number_item)
+        first.onBindViewHolder(holder, 0)
+        assertThat(boundOwner(holder)).isSameAs(firstOwner)
+
+        first.onViewRecycled(holder)
+        assertThat(boundOwner(holder)).isNull()
+        second.onBindViewHolder(holder, 0)
+        assertThat(boundOwner(holder)).isSameAs(secondOwner)
+
+        // Same for a holder bound again without going through the pool
+        first.onBindViewHolder(holder, 0)
+        assertThat(boundOwner(holder)).isSameAs(firstOwner)
+        assertThat(secondList.recycledViewPool).isSameAs(sharedPool.pool)
+    }
+
+    private fun boundOwner(holder: BindingHolder): LifecycleOwner? = DataBindingUtil.getBinding<ViewDataBinding>(holder.itemView)!!.lifecycleOwner
+
+    private class TestLifecycleOwner : LifecycleOwner {
+        private val registry = LifecycleRegistry(this)
+
+        override fun getLifecycle(): Lifecycle = registry
+    }
+
+    @Test
+    fun `prewarming into a shared pool never lowers its limit`() {
+        val tasks = mutableListOf<Runnable>()
+        val sharedPool = SharedViewPool()
+        val warmAdapter = BasicBindingAdapter<LayoutItem>(ItemBinder { _, _, _ -> }, offThreadExecutor)
+        sharedPool.attach(warmAdapter)
+        val recyclerView = RecyclerView(RuntimeEnvironment.application).apply { adapter = warmAdapter }
+
+        // Peak of 8 on screen raises the limit above default, and all of them end up pooled
+        val holders = (0 until 8).map { warmAdapter.createViewHolder(recyclerView, R.layout.number_item) }
+        holders.forEach { warmAdapter.onViewAttachedToWindow(it) }
+        holders.forEach { warmAdapter.onViewDetachedFromWindow(it) }
+        holders.forEach { sharedPool.pool.putRecycledView(it) }
+        assertThat(sharedPool.pool.getRecycledViewCount(R.layout.number_item)).isEqualTo(8)
+
+        val prewarmer = ViewPrewarmer(warmAdapter, recyclerView, Executor { tasks.add(it) }).prewarm(R.layout.number_item, 3)
+        assertThat(sharedPool.pool.getRecycledViewCount(R.layout.number_item)).isEqualTo(8)
+        tasks.removeAt(0).run()
+        ShadowLooper.idleMainLooper()
+
+        assertThat(prewarmer.prewarmedCount).isEqualTo(3)
+        assertThat(sharedPool.pool.getRecycledViewCount(R.layout.number_item)).isEqualTo(11)
+
+        // A later peak below the raised limit doesn't lower it either
+        val shown = (0 until 9).map { sharedPool.pool.getRecycledView(R.layout.number_item) as BindingHolder }
+        shown.forEach { warmAdapter.onViewAttachedToWindow(it) }
+        shown.forEach { warmAdapter.onViewDetachedFromWindow(it) }
+        shown.forEach { sharedPool.pool.putRecycledView(it) }
+        assertThat(sharedPool.pool.getRecycledViewCount(R.layout.number_item)).isEqualTo(11)
+    }
+
+    @Test
+    fun `binding rows does not allocate`() {
+        val rows = 10_000
+        val recyclerView = RecyclerView(RuntimeEnvironment.application).also {
+            it.layoutManager = GridLayoutManager(RuntimeEnvironment.application, 3)
+        }
+        // Every row is a different model bound to a real variable, but all of them show the same text, so TextView is
+        // left untouched and only the binding path is measured. Half of the rows are in groups of four, so group
+        // attributes are bound as well
+        val items = (0 until rows).map { GroupedTestVM(if (it % 8 == 0) 4 else 1) }
+        val batch = GroupController.batch(items)
+        items.filterIndexed { index, _ -> index % 8 == 0 }.forEach { batch.enableGroup(it) }
+        batch.apply()
+        val bindAdapter = BasicBindingAdapter<GroupedTestVM>(BasicItemBinder(BR.model), offThreadExecutor).also {
+            it.setItems(items)
+            recyclerView.adapter = it
+        }
+        val holders = (0 until 16).map { bindAdapter.createViewHolder(recyclerView, R.layout.main_test_item) }
+        val payloads = emptyList<Any>()
+
+        // Rebinds requested by setters stay posted for next frame, as they would while scrolling, so posting is not
+        // measured but once per holder while warming up
+        ShadowLooper.pauseMainLooper()
+        var allocated = 0L
+        // First rounds warm up class loading and compilation
+        repeat(4) {
+            allocated = allocatedBytes {
+                for (i in 0 until rows) {
+                    bindAdapter.onBindViewHolder(holders[i % holders.size], i, payloads)
+                }
+            }
+        }
+        ShadowLooper.unPauseMainLooper()
+
+        assertThat(allocated).isEqualTo(0L)
+        assertThat((holders[0].itemView as TextView).text.toString()).isEqualTo(TestVM(0).value)
+        // Last row bound to it is a group head
+        assertThat(holders[0].enabled()).isTrue()
+    }
+
+    /**
+     * @return bytes allocated by current thread running the block, without the ones allocated to measure them
+     */
+    private inline fun allocatedBytes(block: () -> Unit): Long {
+        val threadBean = ManagementFactory.getThreadMXBean() as com.sun.management.ThreadMXBean
+        val threadId = Thread.currentThread().id
+        val start = threadBean.getThreadAllocatedBytes(threadId)
+        val overhead = threadBean.getThreadAllocatedBytes(threadId) - start
+        val before = threadBean.getThreadAllocatedBytes(threadId)
+        block()
+        return threadBean.getThreadAllocatedBytes(threadId) - before - overhead
+    }
+
+    @Test
+    fun `binding the same model again is skipped unless its content version changes`() {
+        val recyclerView = RecyclerView(RuntimeEnvironment.application)
+        val model = VersionedNumberVM(7)
+        val bindAdapter = BasicBindingAdapter<NumberVM>(BasicItemBinder(BR.model), offThreadExecutor).also {
+            it.setItems(listOf(model))
+        }
+        val holder = bindAdapter.createViewHolder(recyclerView, R.layout.number_item)
+        val text = holder.itemView as TextView
+
+        bindAdapter.onBindViewHolder(holder, 0)
+        assertThat(text.text.toString()).isEqualTo("7")
+
+        // Binding expressions are not run again, so they don't overwrite this
+        text.text = "stale"
+        bindAdapter.onBindViewHolder(holder, 0)
+        assertThat(text.text.toString()).isEqualTo("stale")
+
+        model.version++
+        bindAdapter.onBindViewHolder(holder, 0)
+        assertThat(text.text.toString()).isEqualTo("7")
+    }
+
+    @Test
+    fun `group index follows insertions as a rebuild would`() {
+        val groupAdapter = groupAdapter(groupedItems(-2, 3, -1, 2, 3))
+        assertGroupsMatchRebuild(groupAdapter)
+
+        // Before a group, inside one, at a head, and a new group
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().insert(1, GroupTestItem(1)).build())
+        assertGroupsMatchRebuild(groupAdapter)
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().insert(4, GroupTestItem(1)).build())
+        assertGroupsMatchRebuild(groupAdapter)
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().insert(8, GroupTestItem(1)).build())
+        assertGroupsMatchRebuild(groupAdapter)
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().insert(0, groupedItems(2)).build())
+        assertGroupsMatchRebuild(groupAdapter)
+    }
+
+    @Test
+    fun `group index follows removals and moves as a rebuild would`() {
+        val groupAdapter = groupAdapter(groupedItems(-1, 3, 2, -2, 3, -1, 2))
+        assertGroupsMatchRebuild(groupAdapter)
+
+        // Head of a group, then a range spanning the end of a group and the start of the next one
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().remove(1).build())
+        assertGroupsMatchRebuild(groupAdapter)
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().remove(5, 3).build())
+        assertGroupsMatchRebuild(groupAdapter)
+
+        // A head forward and backward, and a member out of its group
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().move(3, 6).build())
+        assertGroupsMatchRebuild(groupAdapter)
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().move(6, 0).build())
+        assertGroupsMatchRebuild(groupAdapter)
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().move(1, groupAdapter.itemCount - 1).build())
+        assertGroupsMatchRebuild(groupAdapter)
+    }
+
+    @Test
+    fun `removal making groups overlap fails as a rebuild would and recovers`() {
+        val groupAdapter = groupAdapter(groupedItems(3, 2, -1))
+        assertGroupsMatchRebuild(groupAdapter)
+
+        // First group now reaches the head of the second one
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().remove(1).build())
+        assertThat(assertGroupsMatchRebuild(groupAdapter)).isInstanceOf(IllegalArgumentException::class.java)
+
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().remove(2).build())
+        assertThat(assertGroupsMatchRebuild(groupAdapter)).isNull()
+    }
+
+    @Test
+    fun `group index survives more scattered changes than tracked dirty ranges`() {
+        val items = groupedItems(*IntArray(20) { 3 })
+        val groupAdapter = groupAdapter(items)
+        assertGroupsMatchRebuild(groupAdapter)
+
+        // Every head is replaced, one change notification each, half of them by a head of a smaller group
+        val patch = ListPatch.Builder<GroupTestItem>()
+        for (group in 0 until 20) {
+            patch.replace(group * 3, if (group % 2 == 0) GroupTestItem(1) else groupedItems(2)[0])
+        }
+        groupAdapter.applyPatch(patch.build())
+        assertGroupsMatchRebuild(groupAdapter)
+    }
+
+    @Test
+    fun `group index is rebuilt on data set change`() {
+        val items = groupedItems(3, -2, 2, -1)
+        val groupAdapter = groupAdapter(items)
+        assertGroupsMatchRebuild(groupAdapter)
+
+        GroupController.batch(items)
+                .disableGroup(items[0])
+                .enableGroup(items[3])
+                .apply()
+        groupAdapter.notifyDataSetChanged()
+        assertGroupsMatchRebuild(groupAdapter)
+    }
+
+    @Test
+    fun `group margins follow grid rows as groups shift and span configuration changes`() {
+        // Groups at [4, 6) and [9, 13), their heads having margins 11/21 and 13/23
+        val groupAdapter = groupAdapter(groupedItems(-4, 2, -3, 4, -1))
+        val layoutManager = GridLayoutManager(RuntimeEnvironment.application, 3)
+        val recyclerView = RecyclerView(RuntimeEnvironment.application).also {
+            it.layoutManager = layoutManager
+            it.adapter = groupAdapter
+        }
+
+        // A group narrower than a row is on its first and last rows at once
+        assertThat(boundMargins(groupAdapter, recyclerView, 4..5)).containsExactly(11 to 21, 11 to 21).inOrder()
+        assertThat(boundMargins(groupAdapter, recyclerView, 9..12)).containsExactly(13 to 0, 13 to 23, 13 to 23, 0 to 23).inOrder()
+
+        // Far enough for cached rows to be shifted, then right before the group so they are computed again
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().insert(0, GroupTestItem(1)).build())
+        assertThat(boundMargins(groupAdapter, recyclerView, 10..13)).containsExactly(13 to 0, 13 to 23, 13 to 23, 0 to 23).inOrder()
+        groupAdapter.applyPatch(ListPatch.Builder<GroupTestItem>().insert(10, GroupTestItem(1)).build())
+        assertThat(boundMargins(groupAdapter, recyclerView, 10..15)).containsExactly(0 to 0, 13 to 0, 13 to 23, 13 to 23, 0 to 23, 0 to 0).inOrder()
+
+        layoutManager.spanCount = 2
+        assertThat(boundMargins(groupAdapter, recyclerView, 5..6)).containsExactly(11 to 21, 11 to 21).inOrder()
+        assertThat(boundMargins(groupAdapter, recyclerView, 11..14)).containsExactly(13 to 0, 13 to 0, 0 to 23, 0 to 23).inOrder()
+
+        layoutManager.spanSizeLookup = object : GridLayoutManager.SpanSizeLookup() {
+            override fun getSpanSize(position: Int): Int = if (position == 11) 2 else 1
+        }
+        assertThat(boundMargins(groupAdapter, recyclerView, 11..14)).containsExactly(13 to 0, 0 to 0, 0 to 23, 0 to 23).inOrder()
+    }
+
+    @Test
+    fun `group backgrounds merge over grid rows, partial rows included`() {
+        val recyclerView = decoratedRecyclerView(GridLayoutManager(RuntimeEnvironment.application, 3), coloredGroups(5 to Color.RED))
+
+        // A run can grow along a row or along a column, so the last partial row starts a run on its own
+        assertThat(drawnGroups(recyclerView)).containsExactly(
+                boundsOf(recyclerView, 0..2) to Color.RED,
+                boundsOf(recyclerView, 3..4) to Color.RED).inOrder()
+    }
+
+    @Test
+    fun `group backgrounds merge over grid rows laid out right to left`() {
+        val recyclerView = decoratedRecyclerView(GridLayoutManager(RuntimeEnvironment.application, 3), coloredGroups(5 to Color.RED))
+        recyclerView.layoutDirection = View.LAYOUT_DIRECTION_RTL
+        layOut(recyclerView)
+
+        val layoutManager = recyclerView.layoutManager!!
+        assertThat(layoutManager.findViewByPosition(0)!!.left).isGreaterThan(layoutManager.findViewByPosition(1)!!.left)
+        assertThat(drawnGroups(recyclerView)).containsExactly(
+                boundsOf(recyclerView, 0..2) to Color.RED,
+                boundsOf(recyclerView, 3..4) to Color.RED).inOrder()
+    }
 
+    @Test
+    fun `adjacent groups of same color share their background`() {
+        val items = coloredGroups(3 to Color.RED, 2 to Color.RED, 2 to Color.BLUE)
+        val list = decoratedRecyclerView(LinearLayoutManager(RuntimeEnvironment.application), items)
+        assertThat(drawnGroups(list)).containsExactly(
+                boundsOf(list, 0..4) to Color.RED,
+                boundsOf(list, 5..6) to Color.BLUE).inOrder()
+
+        // Both groups share first row, second one goes on alone on next row
+        val grid = decoratedRecyclerView(GridLayoutManager(RuntimeEnvironment.application, 4), coloredGroups(2 to Color.RED, 3 to Color.RED))
+        assertThat(drawnGroups(grid)).containsExactly(
+                boundsOf(grid, 0..3) to Color.RED,
+                boundsOf(grid, 4..4) to Color.RED).inOrder()
+    }
+
+    private fun decoratedRecyclerView(layoutManager: RecyclerView.LayoutManager, items: List<GroupedTestVM>): RecyclerView {
+        val recyclerView = RecyclerView(RuntimeEnvironment.application).also {
+            it.layoutManager = layoutManager
+            it.addItemDecoration(GroupDecorator())
+            it.adapter = BasicBindingAdapter<GroupedTestVM>(BasicItemBinder(BR.model), offThreadExecutor).apply { setItems(items) }
+        }
+        layOut(recyclerView)
+        return recyclerView
+    }
+
+    private fun layOut(recyclerView: RecyclerView) {
+        recyclerView.measure(View.MeasureSpec.makeMeasureSpec(300, View.MeasureSpec.EXACTLY),
+                             View.MeasureSpec.makeMeasureSpec(2000, View.MeasureSpec.EXACTLY))
+        recyclerView.layout(0, 0, 300, 2000)
+    }
+
+    /**
+     * @return rects and colors drawn by the group decorator, in drawing order
+     */
+    private fun drawnGroups(recyclerView: RecyclerView): List<Pair<Rect, Int>> {
+        val drawn = mutableListOf<Pair<Rect, Int>>()
+        val canvas = object : Canvas() {
+            override fun drawRect(r: Rect, paint: Paint) {
+                drawn.add(Rect(r) to paint.color)
+            }
+        }
+        recyclerView.getItemDecorationAt(0).onDraw(canvas, recyclerView, RecyclerView.State())
+        return drawn
+    }
+
+    private fun boundsOf(recyclerView: RecyclerView, positions: IntRange): Rect {
+        val layoutManager = recyclerView.layoutManager!!
+        val bounds = Rect()
+        val childBounds = Rect()
+        positions.forEach {
+            layoutManager.getDecoratedBoundsWithMargins(layoutManager.findViewByPosition(it)!!, childBounds)
+            bounds.union(childBounds)
+        }
+        return bounds
+    }
+
+    /**
+     * Groups of given size and color, a head followed by its members
+     */
+    private fun coloredGroups(vararg groups: Pair<Int, Int>): List<GroupedTestVM> {
+        val items = mutableListOf<GroupedTestVM>()
+        val batch = GroupController.batch(items)
+        groups.forEach { (size, color) ->
+            val head = GroupedTestVM(size)
+            head.attributes().setColor(color)
+            items.add(head)
+            repeat(size - 1) { items.add(GroupedTestVM(1)) }
+            batch.enableGroup(head)
+        }
+        batch.apply()
+        return items
+    }
+
+    /**
+     * @return top and bottom group margins bound at each position
+     */
+    private fun boundMargins(groupAdapter: BasicBindingAdapter<GroupTestItem>, recyclerView: RecyclerView, positions: IntRange): List<Pair<Int, Int>> {
+        val holder = groupAdapter.createViewHolder(recyclerView, R.layout.number_item)
+        return positions.map {
+            groupAdapter.onBindViewHolder(holder, it)
+            holder.attributes().groupMarginTop() to holder.attributes().groupMarginBottom()
+        }
+    }
+
+    /**
+     * Positive sizes are groups, a head followed by its members, and negative ones that many items out of groups. Each
+     * enabled group has distinct color and margins
+     */
+    private fun groupedItems(vararg sizes: Int): List<GroupTestItem> {
+        val items = mutableListOf<GroupTestItem>()
+        val batch = GroupController.batch(items)
+        sizes.forEachIndexed { index, size ->
+            if (size > 0) {
+                val head = GroupTestItem(size)
+                head.attributes().setColor(index).setGroupMarginTop(10 + index).setGroupMarginBottom(20 + index)
+                items.add(head)
+                repeat(size - 1) { items.add(GroupTestItem(1)) }
+                batch.enableGroup(head)
+            } else {
+                repeat(-size) { items.add(GroupTestItem(1)) }
+            }
+        }
+        batch.apply()
+        return items
+    }
+
+    private fun groupAdapter(items: List<GroupTestItem>): BasicBindingAdapter<GroupTestItem> {
+        return BasicBindingAdapter<GroupTestItem>(BasicItemBinder(0), offThreadExecutor).also { it.setItems(items) }
+    }
+
+    /**
+     * Binds every position, which also builds the group index when not built yet
+     */
+    private fun boundGroupAttributes(groupAdapter: BasicBindingAdapter<GroupTestItem>, recyclerView: RecyclerView): List<String> {
+        val holder = groupAdapter.createViewHolder(recyclerView, R.layout.number_item)
+        return (0 until groupAdapter.itemCount).map {
+            groupAdapter.onBindViewHolder(holder, it)
+            val attributes = holder.attributes()
+            "$it: enabled=${holder.enabled()} color=${attributes.color()} top=${attributes.groupMarginTop()} bottom=${attributes.groupMarginBottom()}"
+        }
+    }
+
+    /**
+     * Compares group attributes bound by the adapter, whose group index is kept up to date by notifications, with the
+     * ones bound by a new adapter with the same items
+     *
+     * @return error of both bindings, if they failed
+     */
+    private fun assertGroupsMatchRebuild(groupAdapter: BasicBindingAdapter<GroupTestItem>): Throwable? {
+        val recyclerView = RecyclerView(RuntimeEnvironment.application)
+        val rebuilt = runCatching { boundGroupAttributes(groupAdapter(groupAdapter.snapshotItems()), recyclerView) }
+        val incremental = runCatching { boundGroupAttributes(groupAdapter, recyclerView) }
+        assertThat(incremental.exceptionOrNull()?.javaClass).isEqualTo(rebuilt.exceptionOrNull()?.javaClass)
+        assertThat(incremental.getOrNull()).isEqualTo(rebuilt.getOrNull())
+        return incremental.exceptionOrNull()
+    }
 
     data class TestItems(val id: Int, val text: String) : TypeMarker {
         override fun getItemType(): Int = 0
     }
+
+    class GroupedTestVM(private val size: Int) : TestVM(0), GroupHead, GroupIndicator by BasicIndicatorDelegate() {
+        override fun groupSize(): Int = size
+    }
+
+    data class LayoutItem(private val layout: Int) : TypeMarker {
+        override fun getItemType(): Int = layout
+    }
+
+    class VersionedNumberVM(number: Int) : NumberVM(number, NoToggler), ContentVersioned {
+        var version = 0L
+
+        override fun getContentVersion(): Long = version
+    }
+
+    private object NoToggler : Toggler {
+        override fun toggleItem(groupItem: GroupIndicator) {
+        }
+    }
+
+    class GroupTestItem(private val size: Int) : BasicIndicatorDelegate(), GroupHead {
+        override fun groupSize(): Int = size
+
+        override fun getItemType(): Int = 0
+    }
 }
 
 class TestAdapterObserver : RecyclerView.AdapterDataObserver() {